@@ -0,0 +1,102 @@
+package com.bmo.moviesinforeview.router;
+
+import com.bmo.moviesinforeview.codec.ChunkedJsonEncoder;
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.support.StubRepositories;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encoding and decoding of {@link MovieReview} through the WebFlux codecs, as done for every request
+ * and response body, and list encoding through {@link ChunkedJsonEncoder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonCodecBenchmark {
+
+    private static final ResolvableType MOVIE_REVIEW_TYPE = ResolvableType.forClass(MovieReview.class);
+
+    private static final ResolvableType MOVIE_REVIEW_LIST_TYPE = ResolvableType.forClassWithGenerics(List.class, MovieReview.class);
+
+    @Param({"1", "100"})
+    public int listSize;
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    private Jackson2JsonEncoder encoder;
+
+    private Jackson2JsonDecoder decoder;
+
+    private ChunkedJsonEncoder chunkedJsonEncoder;
+
+    private MovieReview movieReview;
+
+    private List<MovieReview> movieReviews;
+
+    private byte[] movieReviewJson;
+
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder objectMapperBuilder = Jackson2ObjectMapperBuilder.json();
+        encoder = new Jackson2JsonEncoder(objectMapperBuilder.build());
+        decoder = new Jackson2JsonDecoder(objectMapperBuilder.build());
+        chunkedJsonEncoder = StubRepositories.chunkedJsonEncoder();
+        movieReviews = StubRepositories.movieReviews(listSize);
+        movieReview = movieReviews.get(0);
+        movieReviewJson = ("{\"moveInfoId\":\"1SW\",\"comment\":\"" + movieReview.getComment() + "\",\"rating\":9.0}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int encodeReview() {
+        DataBuffer dataBuffer = encoder.encodeValue(movieReview, bufferFactory, MOVIE_REVIEW_TYPE, MediaType.APPLICATION_JSON, null);
+        final int size = dataBuffer.readableByteCount();
+        DataBufferUtils.release(dataBuffer);
+        return size;
+    }
+
+    @Benchmark
+    public int encodeReviewList() {
+        DataBuffer dataBuffer = encoder.encodeValue(movieReviews, bufferFactory, MOVIE_REVIEW_LIST_TYPE, MediaType.APPLICATION_JSON, null);
+        final int size = dataBuffer.readableByteCount();
+        DataBufferUtils.release(dataBuffer);
+        return size;
+    }
+
+    @Benchmark
+    public int encodeReviewListChunked() {
+        return chunkedJsonEncoder.encodeJsonArray(Flux.fromIterable(movieReviews), bufferFactory)
+                .map(dataBuffer -> {
+                    final int size = dataBuffer.readableByteCount();
+                    DataBufferUtils.release(dataBuffer);
+                    return size;
+                })
+                .reduce(0, Integer::sum)
+                .block();
+    }
+
+    @Benchmark
+    public Object decodeReview() {
+        return decoder.decode(bufferFactory.wrap(movieReviewJson), MOVIE_REVIEW_TYPE, MediaType.APPLICATION_JSON, null);
+    }
+}
@@ -0,0 +1,66 @@
+package com.bmo.moviesinforeview.router;
+
+import com.bmo.moviesinforeview.support.StubRepositories;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request through {@link ReviewRouter} routing, the handler and response encoding, with stubbed repositories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RouterDispatchBenchmark {
+
+    private static final String REVIEW_JSON = "{\"moveInfoId\":\"1SW\",\"comment\":\"Best movie ever\",\"rating\":10.0}";
+
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private HttpHandler httpHandler;
+
+    @Setup
+    public void setUp() {
+        httpHandler = RouterFunctions.toHttpHandler(new ReviewRouter().reviewsRoute(StubRepositories.reviewHandler(
+                StubRepositories.movieReviewRepository(StubRepositories.movieReviews(pageSize + 1))),
+                StubRepositories.admissionControl()));
+    }
+
+    @Benchmark
+    public MockServerHttpResponse getReviewsByMoveInfoId() {
+        return handle(MockServerHttpRequest.get("/v1/reviews?moveInfoId=1SW&limit=" + pageSize).build());
+    }
+
+    @Benchmark
+    public MockServerHttpResponse addReview() {
+        return handle(MockServerHttpRequest.post("/v1/reviews")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(REVIEW_JSON));
+    }
+
+    @Benchmark
+    public MockServerHttpResponse getReviewStats() {
+        return handle(MockServerHttpRequest.get("/v1/reviews/stats/1SW").build());
+    }
+
+    private MockServerHttpResponse handle(MockServerHttpRequest request) {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        httpHandler.handle(request, response).block();
+        // drains the body so encoding is part of the measurement
+        response.getBodyAsString().block();
+        return response;
+    }
+}
@@ -0,0 +1,148 @@
+package com.bmo.moviesinforeview.support;
+
+import com.bmo.moviesinforeview.admission.AdmissionControl;
+import com.bmo.moviesinforeview.admission.AdmissionProperties;
+import com.bmo.moviesinforeview.cache.ReviewsByMovieCache;
+import com.bmo.moviesinforeview.codec.ChunkedJsonEncoder;
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
+import com.bmo.moviesinforeview.handler.MovieReviewValidator;
+import com.bmo.moviesinforeview.handler.ReviewHandler;
+import com.bmo.moviesinforeview.repository.MovieReviewRepository;
+import com.bmo.moviesinforeview.repository.MovieReviewRollupRepository;
+import com.bmo.moviesinforeview.repository.MovieReviewStatsRepository;
+import com.bmo.moviesinforeview.repository.ReviewWriteBehind;
+import com.bmo.moviesinforeview.stream.ChangeStreamReviewPublisher;
+import com.bmo.moviesinforeview.stream.ReviewBroadcaster;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory repositories answering every query with fixed data, so the benchmarks measure the service code only.
+ */
+public final class StubRepositories {
+
+    private StubRepositories() {
+    }
+
+    public static List<MovieReview> movieReviews(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> MovieReview.builder()
+                        .id(String.format("%024x", i))
+                        .moveInfoId("1SW")
+                        .comment("A review comment long enough to look like the ones users write, number " + i)
+                        .rating(i % 11)
+                        .version(0L)
+                        .build())
+                .toList();
+    }
+
+    public static MovieReviewRepository movieReviewRepository(List<MovieReview> movieReviews) {
+        return (MovieReviewRepository) Proxy.newProxyInstance(MovieReviewRepository.class.getClassLoader(),
+                new Class<?>[]{MovieReviewRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getReturnType() == Flux.class) {
+                        return Flux.fromIterable(movieReviews);
+                    }
+                    return switch (method.getName()) {
+                        case "save", "insert" -> Mono.just(args[0]);
+                        case "insertUnordered" -> Mono.just(Map.of());
+                        case "existsById" -> Mono.just(true);
+                        case "count" -> Mono.just((long) movieReviews.size());
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "StubMovieReviewRepository";
+                        default -> method.getReturnType() == Mono.class
+                                ? Mono.justOrEmpty(movieReviews.isEmpty() ? null : movieReviews.get(0))
+                                : null;
+                    };
+                });
+    }
+
+    public static MovieReviewStatsRepository movieReviewStatsRepository() {
+        MovieReviewStats movieReviewStats = MovieReviewStats.builder()
+                .moveInfoId("1SW")
+                .count(100)
+                .sum(500)
+                .min(0.0)
+                .max(10.0)
+                .histogram(Map.of("0", 50L, "10", 50L))
+                .version(100)
+                .lastModified(Instant.parse("2023-10-01T00:00:00Z"))
+                .build();
+
+        return (MovieReviewStatsRepository) Proxy.newProxyInstance(MovieReviewStatsRepository.class.getClassLoader(),
+                new Class<?>[]{MovieReviewStatsRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findById", "findChangeMarker" -> Mono.just(movieReviewStats);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "StubMovieReviewStatsRepository";
+                    default -> method.getReturnType() == Flux.class ? Flux.empty() : Mono.empty();
+                });
+    }
+
+    public static MovieReviewRollupRepository movieReviewRollupRepository() {
+        return (MovieReviewRollupRepository) Proxy.newProxyInstance(MovieReviewRollupRepository.class.getClassLoader(),
+                new Class<?>[]{MovieReviewRollupRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "StubMovieReviewRollupRepository";
+                    default -> method.getReturnType() == Flux.class ? Flux.empty() : Mono.empty();
+                });
+    }
+
+    public static Validator validator() {
+        return Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
+    public static MovieReviewValidator movieReviewValidator() {
+        return new MovieReviewValidator(validator(), 2000);
+    }
+
+    /**
+     * Handler wired as in the application, with caching disabled so every read reaches the repository.
+     */
+    public static ReviewHandler reviewHandler(MovieReviewRepository movieReviewRepository) {
+        ReviewBroadcaster reviewBroadcaster = new ReviewBroadcaster(256, ReviewBroadcaster.OverflowPolicy.DROP_OLDEST,
+                Duration.ofSeconds(15), ReviewBroadcaster.Source.LOCAL);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+
+        return new ReviewHandler(movieReviewRepository, movieReviewStatsRepository(), movieReviewRollupRepository(),
+                movieReviewValidator(), reviewBroadcaster,
+                beanFactory.getBeanProvider(ChangeStreamReviewPublisher.class),
+                new ReviewsByMovieCache(0, Duration.ofSeconds(1), beanFactory.getBeanProvider(MeterRegistry.class)),
+                chunkedJsonEncoder(),
+                beanFactory.getBeanProvider(ReviewWriteBehind.class),
+                100, 10, 1000, 500, 100, 1000);
+    }
+
+    public static ChunkedJsonEncoder chunkedJsonEncoder() {
+        return new ChunkedJsonEncoder(Jackson2ObjectMapperBuilder.json().build(), DataSize.ofKilobytes(32));
+    }
+
+    /**
+     * Admission control with the in-flight caps of the application but no rate limits, so it never rejects a
+     * benchmark call and only its own cost is measured.
+     */
+    public static AdmissionControl admissionControl() {
+        AdmissionProperties admissionProperties = new AdmissionProperties();
+        admissionProperties.setClient(new AdmissionProperties.Limit(0.0, 0, 0));
+        admissionProperties.setRoute(new AdmissionProperties.Limit(0.0, 0, 256));
+        return new AdmissionControl(admissionProperties, new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+}
@@ -0,0 +1,96 @@
+package com.bmo.moviesinforeview.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Closed-loop load: {@code concurrency} workers each issue the next request as soon as the previous one
+ * completes, until the duration is over. Latencies go into an HdrHistogram so p99 is exact to three digits.
+ */
+class LoadScenario {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final Supplier<Mono<?>> request;
+
+    LoadScenario(String name, Supplier<Mono<?>> request) {
+        this.name = name;
+        this.request = request;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    ScenarioResult run(int concurrency, Duration warmup, Duration duration) {
+        if (!warmup.isZero()) {
+            drive(concurrency, warmup, new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3), new AtomicLong());
+        }
+
+        ConcurrentHistogram latencies = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+        AtomicLong errors = new AtomicLong();
+        resetPeaks();
+        long start = System.nanoTime();
+        drive(concurrency, duration, latencies, errors);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        long requests = latencies.getTotalCount();
+        return new ScenarioResult(name, requests, errors.get(), requests / elapsedSeconds,
+                toMillis(latencies.getValueAtPercentile(50)),
+                toMillis(latencies.getValueAtPercentile(99)),
+                toMillis(latencies.getMaxValue()),
+                heapPeakMb(),
+                ManagementFactory.getThreadMXBean().getPeakThreadCount());
+    }
+
+    private static void resetPeaks() {
+        ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .forEach(MemoryPoolMXBean::resetPeakUsage);
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    }
+
+    /**
+     * Sum of the peaks of the heap pools, client and server together: an upper bound, the pools do not all
+     * peak at the same time.
+     */
+    private static double heapPeakMb() {
+        long peakBytes = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+        return peakBytes / (1024.0 * 1024.0);
+    }
+
+    private void drive(int concurrency, Duration duration, ConcurrentHistogram latencies, AtomicLong errors) {
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        Flux.range(0, concurrency)
+                .flatMap(worker -> Mono.defer(() -> timed(latencies, errors))
+                        .repeat(() -> System.nanoTime() < deadline), concurrency)
+                .blockLast(duration.plusSeconds(30));
+    }
+
+    private Mono<Void> timed(ConcurrentHistogram latencies, AtomicLong errors) {
+        long start = System.nanoTime();
+        return request.get()
+                .doOnError(e -> errors.incrementAndGet())
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(signal -> latencies.recordValue(Math.min(System.nanoTime() - start, HIGHEST_TRACKABLE_NANOS)))
+                .then();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
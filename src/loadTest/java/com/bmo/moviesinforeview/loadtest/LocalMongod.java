@@ -0,0 +1,92 @@
+package com.bmo.moviesinforeview.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throw-away mongod started from {@code MONGOD_BINARY} (or {@code mongod} on the PATH) on a free port
+ * with a temporary data directory, so a load test run never touches a developer database.
+ */
+class LocalMongod implements AutoCloseable {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Process process;
+    private final Path dbPath;
+    private final int port;
+
+    private LocalMongod(Process process, Path dbPath, int port) {
+        this.process = process;
+        this.dbPath = dbPath;
+        this.port = port;
+    }
+
+    static LocalMongod start() throws IOException, InterruptedException {
+        var binary = System.getenv().getOrDefault("MONGOD_BINARY", "mongod");
+        var dbPath = Files.createTempDirectory("reviews-loadtest");
+        var port = freePort();
+        var process = new ProcessBuilder(binary,
+                "--port", String.valueOf(port),
+                "--bind_ip", "127.0.0.1",
+                "--dbpath", dbPath.toString(),
+                "--quiet")
+                .redirectErrorStream(true)
+                .redirectOutput(dbPath.resolve("mongod.log").toFile())
+                .start();
+        var mongod = new LocalMongod(process, dbPath, port);
+        mongod.awaitStartup();
+        return mongod;
+    }
+
+    String uri() {
+        return "mongodb://127.0.0.1:" + port + "/loadtest";
+    }
+
+    private void awaitStartup() throws IOException, InterruptedException {
+        var deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("mongod exited with " + process.exitValue()
+                        + ", see " + dbPath.resolve("mongod.log"));
+            }
+            try (var socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 200);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        close();
+        throw new IOException("mongod did not accept connections within " + STARTUP_TIMEOUT);
+    }
+
+    static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        process.destroy();
+        try {
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        try (Stream<Path> files = Files.walk(dbPath)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.bmo.moviesinforeview.loadtest;
+
+import com.bmo.moviesinforeview.domain.BatchItemResult;
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.repository.MovieReviewRepository;
+import com.bmo.moviesinforeview.repository.MovieReviewStatsRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end throughput and latency of every review endpoint, run with {@code ./gradlew loadTest}.
+ * <p>
+ * Settings are read from {@code -PloadTest.<name>=<value>}: {@code concurrency}, {@code duration} and
+ * {@code warmup} (ISO-8601, e.g. PT10S), {@code movies}, {@code reviewsPerMovie}, {@code batchSize},
+ * {@code streamSubscribers}, {@code tolerance}, {@code mongoUri} (otherwise a throw-away mongod is started),
+ * {@code admission=true} to keep admission control on, {@code baseline} and
+ * {@code updateBaseline=true} to record the current run as the new baseline instead of comparing against it.
+ * <p>
+ * The numbers depend on the machine, so no baseline is checked in: CI keeps {@code loadtest-baseline.json} with the
+ * runner that recorded it and passes it with {@code -PloadTest.baseline=<file>}. A run without a baseline fails
+ * rather than passing unchecked; record one with {@code -PloadTest.updateBaseline=true} on that runner.
+ * <p>
+ * {@code ./gradlew loadTest loadTestBlocking} runs it again with the {@code blocking} profile and prints both
+ * execution modes side by side ({@code compareWith}) instead of checking the baseline.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ReviewLoadTest {
+
+    private static final String API_URL = "/v1/reviews";
+
+    private static final int CONCURRENCY = Integer.getInteger("loadTest.concurrency", 64);
+    private static final Duration WARMUP = Duration.parse(System.getProperty("loadTest.warmup", "PT5S"));
+    private static final Duration DURATION = Duration.parse(System.getProperty("loadTest.duration", "PT15S"));
+    private static final int MOVIES = Integer.getInteger("loadTest.movies", 100);
+    private static final int REVIEWS_PER_MOVIE = Integer.getInteger("loadTest.reviewsPerMovie", 200);
+    private static final int BATCH_SIZE = Integer.getInteger("loadTest.batchSize", 100);
+    private static final int STREAM_SUBSCRIBERS = Integer.getInteger("loadTest.streamSubscribers", 50);
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("loadTest.tolerance", "0.2"));
+    private static final boolean UPDATE_BASELINE = Boolean.getBoolean("loadTest.updateBaseline");
+    private static final Path BASELINE = Path.of(System.getProperty("loadTest.baseline", "loadtest-baseline.json"));
+    private static final Path REPORT = Path.of(System.getProperty("loadTest.report", "build/reports/loadtest/results.json"));
+    private static final String COMPARE_WITH = System.getProperty("loadTest.compareWith");
+
+    private static LocalMongod localMongod;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MovieReviewRepository repository;
+
+    @Autowired
+    private MovieReviewStatsRepository statsRepository;
+
+    @Autowired
+    private Environment environment;
+
+    private WebClient webClient;
+
+    private List<String> reviewIds;
+
+    private final ConcurrentLinkedQueue<String> deletableIds = new ConcurrentLinkedQueue<>();
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) throws IOException, InterruptedException {
+        String mongoUri = System.getProperty("loadTest.mongoUri");
+        if (mongoUri == null) {
+            localMongod = LocalMongod.start();
+        }
+        registry.add("spring.data.mongodb.uri", () -> mongoUri != null ? mongoUri : localMongod.uri());
+        registry.add("reviews.stream.source", () -> "local");
+        // every load test request comes from one client, measure the service rather than its rate limits
+        registry.add("reviews.admission.enabled", () -> System.getProperty("loadTest.admission", "false"));
+    }
+
+    @AfterAll
+    static void stopMongod() throws IOException {
+        if (localMongod != null) {
+            localMongod.close();
+        }
+    }
+
+    @BeforeEach
+    void seed() {
+        webClient = WebClient.builder().baseUrl("http://localhost:" + port + API_URL).build();
+
+        statsRepository.deleteAll()
+                .then(repository.deleteAll())
+                .block();
+
+        reviewIds = Flux.range(0, MOVIES * REVIEWS_PER_MOVIE)
+                .map(i -> review(movieId(i % MOVIES), i))
+                .buffer(1_000)
+                .concatMap(chunk -> repository.saveAll(chunk)
+                        .collectList()
+                        .flatMap(saved -> statsRepository.recordAdded(saved).thenReturn(saved)))
+                .flatMapIterable(saved -> saved)
+                .map(MovieReview::getId)
+                .collectList()
+                .block();
+    }
+
+    @Test
+    void endpointsMeetBaseline() throws IOException {
+        List<ScenarioResult> results = new ArrayList<>();
+        for (LoadScenario scenario : scenarios()) {
+            if (scenario.getName().equals("DELETE /{id}")) {
+                refillDeletableIds();
+            }
+            ScenarioResult result = scenario.run(CONCURRENCY, WARMUP, DURATION);
+            System.out.println(result);
+            results.add(result);
+        }
+
+        StreamLoad streamLoad = mixedWithStreamSubscribers();
+        System.out.println(streamLoad.mixed());
+        System.out.printf("%-16s %8d subscribers received %d events (%d failed)%n",
+                "stream", STREAM_SUBSCRIBERS, streamLoad.eventsReceived(), streamLoad.subscriberErrors());
+        results.add(streamLoad.mixed());
+
+        Map<String, ScenarioResult> byName = new LinkedHashMap<>();
+        results.forEach(result -> byName.put(result.name(), result));
+        writeReport(byName, streamLoad);
+
+        if (COMPARE_WITH != null) {
+            printComparison(byName);
+            return;
+        }
+
+        if (UPDATE_BASELINE) {
+            objectMapper.writeValue(BASELINE.toFile(), byName);
+            System.out.println("Baseline written to " + BASELINE);
+            return;
+        }
+        assertTrue(Files.exists(BASELINE), "No baseline at " + BASELINE + ", pass one with -PloadTest.baseline=<file> "
+                + "or record this run with -PloadTest.updateBaseline=true; results are in " + REPORT);
+
+        Map<String, ScenarioResult> baseline = objectMapper.readValue(BASELINE.toFile(), new TypeReference<>() {
+        });
+        List<String> regressions = new ArrayList<>();
+        byName.forEach((name, result) -> {
+            ScenarioResult previous = baseline.get(name);
+            if (previous != null) {
+                regressions.addAll(result.regressionsAgainst(previous, TOLERANCE));
+            }
+        });
+        assertTrue(regressions.isEmpty(), "Regressions against " + BASELINE + ":\n" + String.join("\n", regressions));
+    }
+
+    private void printComparison(Map<String, ScenarioResult> results) throws IOException {
+        Map<String, Object> other = objectMapper.readValue(Path.of(COMPARE_WITH).toFile(), new TypeReference<>() {
+        });
+        Map<String, ScenarioResult> otherResults = objectMapper.convertValue(other.get("scenarios"), new TypeReference<>() {
+        });
+        System.out.printf("%s / %s (%s)%n", profile(), other.get("profile"), COMPARE_WITH);
+        results.forEach((name, result) -> {
+            ScenarioResult otherResult = otherResults.get(name);
+            if (otherResult != null) {
+                System.out.println(result.comparedWith(otherResult));
+            }
+        });
+    }
+
+    private String profile() {
+        return environment.getActiveProfiles().length > 0 ? String.join(",", environment.getActiveProfiles()) : "reactive";
+    }
+
+    private List<LoadScenario> scenarios() {
+        return List.of(
+                new LoadScenario("POST", this::addReview),
+                new LoadScenario("POST /batch", this::addReviews),
+                new LoadScenario("GET", this::getAllReviews),
+                new LoadScenario("GET ?moveInfoId", this::getReviewsByMovie),
+                new LoadScenario("GET /stats", this::getStats),
+                new LoadScenario("PUT /{id}", this::updateReview),
+                new LoadScenario("DELETE /{id}", this::deleteReview)
+        );
+    }
+
+    /**
+     * Mixed read-heavy traffic while live subscribers are attached, so fan-out cost shows up in request latency.
+     */
+    private StreamLoad mixedWithStreamSubscribers() {
+        AtomicLong eventsReceived = new AtomicLong();
+        AtomicLong subscriberErrors = new AtomicLong();
+        List<Disposable> subscribers = IntStream.range(0, STREAM_SUBSCRIBERS)
+                .mapToObj(i -> webClient.get()
+                        .uri("/stream")
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .retrieve()
+                        .bodyToFlux(MovieReview.class)
+                        .subscribe(review -> eventsReceived.incrementAndGet(), e -> subscriberErrors.incrementAndGet()))
+                .toList();
+
+        try {
+            ScenarioResult mixed = new LoadScenario("mixed + stream", () -> {
+                int roll = ThreadLocalRandom.current().nextInt(100);
+                if (roll < 10) {
+                    return addReview();
+                }
+                if (roll < 20) {
+                    return updateReview();
+                }
+                if (roll < 60) {
+                    return getReviewsByMovie();
+                }
+                if (roll < 80) {
+                    return getStats();
+                }
+                return getAllReviews();
+            }).run(CONCURRENCY, WARMUP, DURATION);
+            return new StreamLoad(mixed, eventsReceived.get(), subscriberErrors.get());
+        } finally {
+            subscribers.forEach(Disposable::dispose);
+        }
+    }
+
+    private Mono<?> addReview() {
+        int i = ThreadLocalRandom.current().nextInt(1_000_000);
+        return webClient.post()
+                .bodyValue(review(randomMovieId(), i))
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    // the results are streamed as the chunks are inserted, the request ends with the last one
+    private Mono<?> addReviews() {
+        int first = ThreadLocalRandom.current().nextInt(1_000_000);
+        List<MovieReview> batch = IntStream.range(first, first + BATCH_SIZE)
+                .mapToObj(i -> review(randomMovieId(), i))
+                .toList();
+        return webClient.post()
+                .uri("/batch")
+                .bodyValue(batch)
+                .retrieve()
+                .bodyToFlux(BatchItemResult.class)
+                .then();
+    }
+
+    private Mono<?> getAllReviews() {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder.queryParam("limit", 100).build())
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    private Mono<?> getReviewsByMovie() {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder.queryParam("moveInfoId", randomMovieId()).build())
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    private Mono<?> getStats() {
+        return webClient.get()
+                .uri("/stats/{moveInfoId}", randomMovieId())
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    private Mono<?> updateReview() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = reviewIds.get(random.nextInt(reviewIds.size()));
+        return webClient.put()
+                .uri("/{id}", id)
+                .bodyValue(MovieReview.builder().comment("updated " + random.nextInt()).rating(random.nextInt(11)).build())
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    private Mono<?> deleteReview() {
+        String id = deletableIds.poll();
+        Mono<String> idMono = id != null
+                ? Mono.just(id)
+                : repository.save(review(randomMovieId(), 0)).map(MovieReview::getId);
+        return idMono.flatMap(reviewId -> webClient.delete()
+                .uri("/{id}", reviewId)
+                .retrieve()
+                .toBodilessEntity());
+    }
+
+    /**
+     * Deletes must not compete with the seed data the other scenarios read, so they get their own reviews,
+     * inserted up front so the insert cost stays out of the measurement.
+     */
+    private void refillDeletableIds() {
+        int expected = (int) Math.min(500_000, CONCURRENCY * (WARMUP.plus(DURATION).toSeconds() + 1) * 200);
+        Flux.range(0, expected)
+                .map(i -> review(randomMovieId(), i))
+                .buffer(1_000)
+                .concatMap(chunk -> repository.saveAll(chunk)
+                        .collectList()
+                        .flatMap(saved -> statsRepository.recordAdded(saved).thenReturn(saved)))
+                .flatMapIterable(saved -> saved)
+                .doOnNext(review -> deletableIds.add(review.getId()))
+                .blockLast();
+    }
+
+    private void writeReport(Map<String, ScenarioResult> results, StreamLoad streamLoad) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("profile", profile());
+        report.put("concurrency", CONCURRENCY);
+        report.put("warmup", WARMUP.toString());
+        report.put("duration", DURATION.toString());
+        report.put("movies", MOVIES);
+        report.put("reviewsPerMovie", REVIEWS_PER_MOVIE);
+        report.put("batchSize", BATCH_SIZE);
+        report.put("streamSubscribers", STREAM_SUBSCRIBERS);
+        report.put("streamEventsReceived", streamLoad.eventsReceived());
+        report.put("streamSubscriberErrors", streamLoad.subscriberErrors());
+        report.put("scenarios", results);
+
+        Files.createDirectories(REPORT.toAbsolutePath().getParent());
+        objectMapper.writeValue(REPORT.toFile(), report);
+        System.out.println("Results written to " + REPORT);
+    }
+
+    private static MovieReview review(String moveInfoId, int i) {
+        return MovieReview.builder()
+                .moveInfoId(moveInfoId)
+                .comment("load test review " + i)
+                .rating(i % 11)
+                .build();
+    }
+
+    private static String movieId(int i) {
+        return "movie-" + i;
+    }
+
+    private static String randomMovieId() {
+        return movieId(ThreadLocalRandom.current().nextInt(MOVIES));
+    }
+
+    private record StreamLoad(ScenarioResult mixed, long eventsReceived, long subscriberErrors) {
+    }
+}
@@ -0,0 +1,44 @@
+package com.bmo.moviesinforeview.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throughput, latency and memory of one scenario; latencies are in milliseconds. Heap and platform threads are
+ * the peaks of the whole JVM during the run, load generator included.
+ */
+record ScenarioResult(String name, long requests, long errors, double rps, double p50Ms, double p99Ms, double maxMs,
+                      double heapPeakMb, int peakThreads) {
+
+    /**
+     * Regressions of this run against the baseline: throughput more than {@code tolerance} below it,
+     * or p99 latency more than {@code tolerance} above it.
+     */
+    List<String> regressionsAgainst(ScenarioResult baseline, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        if (rps < baseline.rps() * (1 - tolerance)) {
+            regressions.add(String.format("%s: %.0f rps, baseline %.0f rps", name, rps, baseline.rps()));
+        }
+        if (p99Ms > baseline.p99Ms() * (1 + tolerance)) {
+            regressions.add(String.format("%s: p99 %.2f ms, baseline %.2f ms", name, p99Ms, baseline.p99Ms()));
+        }
+        if (errors > 0) {
+            regressions.add(String.format("%s: %d of %d requests failed", name, errors, requests));
+        }
+        return regressions;
+    }
+
+    /**
+     * Side by side with the same scenario run in another execution mode, this run first.
+     */
+    String comparedWith(ScenarioResult other) {
+        return String.format("%-16s %10.0f / %-10.0f rps   p99 %8.2f / %-8.2f ms   heap %6.0f / %-6.0f MB   threads %4d / %-4d",
+                name, rps, other.rps(), p99Ms, other.p99Ms(), heapPeakMb, other.heapPeakMb(), peakThreads, other.peakThreads());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-16s %8d req %6d err %10.0f rps   p50 %8.2f ms   p99 %8.2f ms   max %8.2f ms   heap %6.0f MB   threads %4d",
+                name, requests, errors, rps, p50Ms, p99Ms, maxMs, heapPeakMb, peakThreads);
+    }
+}
@@ -0,0 +1,147 @@
+package com.bmo.moviesinforeview.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Startup time and resident memory of the service per build, run with {@code ./gradlew startupBenchmark}.
+ * <p>
+ * Every mode is a command line passed as {@code -Dstartup.command.<mode>}: the plain JVM, the JVM running the
+ * AOT-generated context ({@code -Dspring.aot.enabled=true}) and, once {@code nativeCompile} has run, the native
+ * binary. Each is started {@code startup.runs} times on a free port; startup is the time until the first HTTP
+ * answer, and RSS is read from {@code /proc} at that moment and again after {@code startup.requests} requests.
+ * The requests go to an unknown route, answered with a 404 without touching Mongo, so no database is needed.
+ */
+public final class StartupBenchmark {
+
+    private static final int RUNS = Integer.getInteger("startup.runs", 5);
+    private static final int REQUESTS = Integer.getInteger("startup.requests", 1_000);
+    private static final Duration TIMEOUT = Duration.parse(System.getProperty("startup.timeout", "PT60S"));
+    private static final Path REPORT = Path.of(System.getProperty("startup.report", "build/reports/startup/results.json"));
+    private static final String COMMAND_PREFIX = "startup.command.";
+
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(200))
+            .build();
+
+    record ModeResult(String mode, int runs, double startupMedianMs, double startupMinMs, double rssAtStartupMb,
+                      double rssAfterRequestsMb) {
+
+        @Override
+        public String toString() {
+            return String.format("%-10s %3d runs   startup median %8.0f ms   min %8.0f ms   RSS %6.0f MB   after %d requests %6.0f MB",
+                    mode, runs, startupMedianMs, startupMinMs, rssAtStartupMb, REQUESTS, rssAfterRequestsMb);
+        }
+    }
+
+    private record Run(double startupMs, double rssAtStartupMb, double rssAfterRequestsMb) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> commands = new LinkedHashMap<>();
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith(COMMAND_PREFIX))
+                .sorted()
+                .forEach(name -> commands.put(name.substring(COMMAND_PREFIX.length()), System.getProperty(name)));
+
+        List<ModeResult> results = new ArrayList<>();
+        for (Map.Entry<String, String> command : commands.entrySet()) {
+            List<String> commandLine = Arrays.asList(command.getValue().trim().split("\\s+"));
+            if (!Files.isExecutable(Path.of(commandLine.get(0)))) {
+                System.out.printf("%-10s skipped, %s not built%n", command.getKey(), commandLine.get(0));
+                continue;
+            }
+            ModeResult result = measure(command.getKey(), commandLine);
+            System.out.println(result);
+            results.add(result);
+        }
+
+        Files.createDirectories(REPORT.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(REPORT.toFile(), results);
+        System.out.println("Results written to " + REPORT);
+    }
+
+    private static ModeResult measure(String mode, List<String> commandLine) throws IOException, InterruptedException {
+        List<Run> runs = new ArrayList<>();
+        for (int i = 0; i < RUNS; i++) {
+            runs.add(run(commandLine));
+        }
+        double[] startups = runs.stream().mapToDouble(Run::startupMs).sorted().toArray();
+        return new ModeResult(mode, runs.size(), startups[startups.length / 2], startups[0],
+                runs.stream().mapToDouble(Run::rssAtStartupMb).average().orElse(0),
+                runs.stream().mapToDouble(Run::rssAfterRequestsMb).average().orElse(0));
+    }
+
+    private static Run run(List<String> commandLine) throws IOException, InterruptedException {
+        int port = LocalMongod.freePort();
+        List<String> arguments = new ArrayList<>(commandLine);
+        arguments.add("--server.port=" + port);
+        // answered by the router alone; health would wait for Mongo
+        URI unknownRoute = URI.create("http://127.0.0.1:" + port + "/v1/reviews/unknown");
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(arguments)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            long deadline = start + TIMEOUT.toNanos();
+            while (!answers(unknownRoute)) {
+                if (!process.isAlive() || System.nanoTime() > deadline) {
+                    throw new IllegalStateException(String.join(" ", commandLine) + " did not start");
+                }
+                Thread.sleep(5);
+            }
+            double startupMs = (System.nanoTime() - start) / 1e6;
+            double rssAtStartupMb = rssMb(process);
+
+            for (int i = 0; i < REQUESTS; i++) {
+                answers(unknownRoute);
+            }
+            return new Run(startupMs, rssAtStartupMb, rssMb(process));
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static boolean answers(URI uri) throws InterruptedException {
+        try {
+            HTTP_CLIENT.send(HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(5)).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Resident set size of the process, 0 where {@code /proc} is not available.
+     */
+    private static double rssMb(Process process) throws IOException {
+        Path status = Path.of("/proc", String.valueOf(process.pid()), "status");
+        if (!Files.exists(status)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("\\D", "")) / 1024.0;
+            }
+        }
+        return 0;
+    }
+}
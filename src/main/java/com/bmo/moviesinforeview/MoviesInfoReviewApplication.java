@@ -1,12 +1,19 @@
 package com.bmo.moviesinforeview;
 
+import com.bmo.moviesinforeview.config.NativeRuntimeHints;
+import com.bmo.moviesinforeview.snapshot.ReviewSnapshotCommand;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(NativeRuntimeHints.class)
 public class MoviesInfoReviewApplication {
 
 	public static void main(String[] args) {
+		if (ReviewSnapshotCommand.isInvoked(args)) {
+			System.exit(ReviewSnapshotCommand.run(MoviesInfoReviewApplication.class, args));
+		}
 		SpringApplication.run(MoviesInfoReviewApplication.class, args);
 	}
 
@@ -0,0 +1,216 @@
+package com.bmo.moviesinforeview.admission;
+
+import com.bmo.moviesinforeview.exception.ReviewOverloadedException;
+import com.bmo.moviesinforeview.exception.ReviewRateLimitedException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission filters for the review routes. A request is checked, in order, against the token bucket of its
+ * client, the token bucket of its route and the in-flight cap of its route, and rejected on the spot with a
+ * 429 or 503 and a Retry-After instead of waiting for a Mongo connection.
+ * <p>
+ * A request stays in flight until its response body is written, so streamed responses hold their slot for as
+ * long as they stream. Admissions, rejections by reason and in-flight requests are published as
+ * {@code reviews.admission.*} meters tagged with the route.
+ */
+@Component
+@EnableConfigurationProperties(AdmissionProperties.class)
+public class AdmissionControl {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private static final Duration OVERLOADED_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final AdmissionProperties properties;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final Cache<String, TokenBucket> clientBuckets;
+
+    public AdmissionControl(AdmissionProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.clientBuckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxClients())
+                .build();
+        AdmissionProperties.Limit clientLimit = properties.getClient();
+        if (properties.isEnabled() && properties.getClientHeader() == null
+                && clientLimit.getRate() != null && clientLimit.getRate() > 0) {
+            LOGGER.warn("Clients are rate limited by remote address; behind a load balancer they all share one limit, "
+                    + "set reviews.admission.client-header");
+        }
+    }
+
+    public HandlerFilterFunction<ServerResponse, ServerResponse> forRoute(String routeName) {
+        if (!properties.isEnabled()) {
+            return (request, next) -> next.handle(request);
+        }
+        return new RouteAdmissionFilter(routeName, properties.limitOf(routeName));
+    }
+
+    private String clientOf(ServerRequest request) {
+        if (properties.getClientHeader() != null) {
+            String client = request.headers().firstHeader(properties.getClientHeader());
+            if (client != null) {
+                return client;
+            }
+        }
+        return request.remoteAddress()
+                .map(address -> address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString())
+                .orElse("unknown");
+    }
+
+    private long tryAcquireClient(ServerRequest request) {
+        AdmissionProperties.Limit clientLimit = properties.getClient();
+        if (clientLimit.getRate() == null || clientLimit.getRate() <= 0) {
+            return 0;
+        }
+        return clientBuckets.get(clientOf(request), client -> new TokenBucket(clientLimit.getRate(), clientLimit.getBurst()))
+                .tryAcquire();
+    }
+
+    private class RouteAdmissionFilter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+        private final String routeName;
+        private final TokenBucket routeBucket;
+        private final int maxInFlight;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private Counter admitted;
+        private Counter rejectedClientRate;
+        private Counter rejectedRouteRate;
+        private Counter rejectedInFlight;
+
+        RouteAdmissionFilter(String routeName, AdmissionProperties.Limit limit) {
+            this.routeName = routeName;
+            this.routeBucket = limit.getRate() != null && limit.getRate() > 0 ? new TokenBucket(limit.getRate(), limit.getBurst()) : null;
+            this.maxInFlight = limit.getMaxInFlight() != null ? limit.getMaxInFlight() : 0;
+            meterRegistry.ifAvailable(this::bindTo);
+        }
+
+        private void bindTo(MeterRegistry registry) {
+            admitted = Counter.builder("reviews.admission.admitted").tag("route", routeName)
+                    .description("Requests admitted").register(registry);
+            rejectedClientRate = rejectedCounter(registry, "client-rate");
+            rejectedRouteRate = rejectedCounter(registry, "route-rate");
+            rejectedInFlight = rejectedCounter(registry, "in-flight");
+            Gauge.builder("reviews.admission.in-flight", inFlight, AtomicInteger::get).tag("route", routeName)
+                    .description("Requests admitted and not answered yet").register(registry);
+        }
+
+        private Counter rejectedCounter(MeterRegistry registry, String reason) {
+            return Counter.builder("reviews.admission.rejected").tag("route", routeName).tag("reason", reason)
+                    .description("Requests rejected before reaching the handler").register(registry);
+        }
+
+        @Override
+        public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
+            long clientWaitNanos = tryAcquireClient(request);
+            if (clientWaitNanos > 0) {
+                increment(rejectedClientRate);
+                return Mono.error(new ReviewRateLimitedException("Too many requests from this client", retryAfter(clientWaitNanos)));
+            }
+
+            long routeWaitNanos = routeBucket != null ? routeBucket.tryAcquire() : 0;
+            if (routeWaitNanos > 0) {
+                increment(rejectedRouteRate);
+                return Mono.error(new ReviewRateLimitedException("Too many requests for this route", retryAfter(routeWaitNanos)));
+            }
+
+            if (maxInFlight > 0 && inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                increment(rejectedInFlight);
+                return Mono.error(new ReviewOverloadedException("Too many requests in progress for this route", OVERLOADED_RETRY_AFTER));
+            }
+            increment(admitted);
+            if (maxInFlight <= 0) {
+                return next.handle(request);
+            }
+
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                }
+            };
+            return Mono.defer(() -> next.handle(request))
+                    .<ServerResponse>map(response -> new InFlightServerResponse(response, release))
+                    .doOnError(ex -> release.run())
+                    .doOnCancel(release)
+                    .switchIfEmpty(Mono.fromRunnable(release));
+        }
+
+        private static void increment(Counter counter) {
+            if (counter != null) {
+                counter.increment();
+            }
+        }
+
+        private static Duration retryAfter(long waitNanos) {
+            // Retry-After is in whole seconds
+            return Duration.ofSeconds(Math.max(1, (long) Math.ceil(waitNanos / 1e9)));
+        }
+    }
+
+    /**
+     * Releases the in-flight slot once the response has been written, or failed to be.
+     */
+    private static class InFlightServerResponse implements ServerResponse {
+
+        private final ServerResponse delegate;
+        private final Runnable release;
+
+        InFlightServerResponse(ServerResponse delegate, Runnable release) {
+            this.delegate = delegate;
+            this.release = release;
+        }
+
+        @Override
+        public HttpStatusCode statusCode() {
+            return delegate.statusCode();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public int rawStatusCode() {
+            return delegate.rawStatusCode();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return delegate.headers();
+        }
+
+        @Override
+        public MultiValueMap<String, ResponseCookie> cookies() {
+            return delegate.cookies();
+        }
+
+        @Override
+        public Mono<Void> writeTo(ServerWebExchange exchange, Context context) {
+            return delegate.writeTo(exchange, context)
+                    .doFinally(signalType -> release.run());
+        }
+    }
+}
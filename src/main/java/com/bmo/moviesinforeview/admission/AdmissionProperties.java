@@ -0,0 +1,62 @@
+package com.bmo.moviesinforeview.admission;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits of {@link AdmissionControl}, bound from {@code reviews.admission.*}.
+ * A rate or max-in-flight of 0 means no limit.
+ */
+@Data
+@ConfigurationProperties("reviews.admission")
+public class AdmissionProperties {
+
+    private boolean enabled = true;
+
+    // header identifying a client, such as an API key header; the remote address when not set
+    private String clientHeader;
+
+    // clients tracked at once, the least recently seen lose their bucket first
+    private long maxClients = 100_000;
+
+    // every client, across all routes; off by default, behind a load balancer every request has the same
+    // remote address, so it needs a client-header first
+    private Limit client = new Limit(0.0, 0, 0);
+
+    // every route without an entry in routes
+    private Limit route = new Limit(2000.0, 4000, 256);
+
+    // by route name, unset values fall back to route, except the burst of a route with a rate of its own
+    private Map<String, Limit> routes = new HashMap<>();
+
+    public Limit limitOf(String routeName) {
+        Limit routeLimit = routes.get(routeName);
+        if (routeLimit == null) {
+            return route;
+        }
+        Integer burst = routeLimit.getBurst();
+        if (burst == null) {
+            // a rate of its own gets one second of that rate, not the burst sized for the default rate
+            burst = routeLimit.getRate() != null ? (int) Math.ceil(Math.max(1.0, routeLimit.getRate())) : route.getBurst();
+        }
+        return new Limit(
+                routeLimit.getRate() != null ? routeLimit.getRate() : route.getRate(),
+                burst,
+                routeLimit.getMaxInFlight() != null ? routeLimit.getMaxInFlight() : route.getMaxInFlight());
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+        // requests per second
+        private Double rate;
+        private Integer burst;
+        private Integer maxInFlight;
+    }
+}
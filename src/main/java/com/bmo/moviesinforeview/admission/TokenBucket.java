@@ -0,0 +1,39 @@
+package com.bmo.moviesinforeview.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, kept as the theoretical arrival time of the next request (GCRA): a request is admitted
+ * while that time is at most {@code burst} tokens ahead of now, and every admitted request moves it one token
+ * further. Equivalent to a bucket of {@code burst} tokens refilled at {@code rate} per second, with a single
+ * compare-and-set per request and no refill timer.
+ */
+class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+    TokenBucket(double ratePerSecond, int burst) {
+        this.nanosPerToken = (long) (1_000_000_000L / ratePerSecond);
+        this.burstNanos = nanosPerToken * Math.max(burst, 1);
+    }
+
+    /**
+     * @return 0 when a token was taken, otherwise how many nanoseconds to wait for the next one
+     */
+    long tryAcquire() {
+        final long now = System.nanoTime();
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long nextArrival = Math.max(arrival, now) + nanosPerToken;
+            long ahead = nextArrival - now;
+            if (ahead > burstNanos) {
+                return ahead - burstNanos;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, nextArrival)) {
+                return 0;
+            }
+        }
+    }
+}
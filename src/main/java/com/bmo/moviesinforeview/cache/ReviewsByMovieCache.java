@@ -0,0 +1,170 @@
+package com.bmo.moviesinforeview.cache;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of the first page of reviews of a movie, the page every client asks for first.
+ * Concurrent misses on the same page share a single query. Writes invalidate the pages of the movie they touch.
+ * Pages are also keyed by the change marker of the movie they were read after, so a write made by another
+ * instance is noticed as soon as its marker is; without a marker the TTL bounds how long it can go unnoticed.
+ * Hits, misses and evictions are published as the {@code cache.*} meters of the {@value #CACHE_NAME} cache.
+ * <p>
+ * Entries are the movies, each holding its pages by limit, so invalidating a movie is a single removal whatever
+ * the size of the cache. The movie of every cached review is indexed for the writes that only know a review id.
+ * Both are bounded by the number of cached reviews rather than movies, since one movie may hold a few reviews
+ * or pages of hundreds: a movie weighs the reviews on its loaded pages, plus one for the entry itself.
+ */
+@Component
+public class ReviewsByMovieCache {
+
+    public static final String CACHE_NAME = "reviewsByMovie";
+
+    // limits asked for beyond these are read without caching, they are rare
+    private static final int MAX_PAGES_PER_MOVIE = 8;
+
+    /**
+     * The pages of one movie, all read after the same change marker.
+     */
+    private record MoviePages(String changeMarker, ConcurrentMap<Integer, CompletableFuture<List<MovieReview>>> pagesByLimit) {
+
+        // pages still loading weigh nothing, the movie is weighed again when one is loaded
+        int weight() {
+            int reviews = 1;
+            for (CompletableFuture<List<MovieReview>> page : pagesByLimit.values()) {
+                List<MovieReview> movieReviews = page.getNow(null);
+                if (movieReviews != null) {
+                    reviews += movieReviews.size();
+                }
+            }
+            return reviews;
+        }
+    }
+
+    private final StatsCounter statsCounter = new ConcurrentStatsCounter();
+
+    private final Cache<String, MoviePages> cache;
+
+    // review id -> movie, of the reviews on cached pages
+    private final Cache<String, String> moviesOfReviews;
+
+    public ReviewsByMovieCache(@Value("${reviews.cache.max-reviews:100000}") long maxReviews,
+                               @Value("${reviews.cache.ttl:30s}") Duration ttl,
+                               ObjectProvider<MeterRegistry> meterRegistry) {
+        // hits and misses are recorded per page, by get()
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxReviews)
+                .<String, MoviePages>weigher((moveInfoId, moviePages) -> moviePages.weight())
+                .expireAfterWrite(ttl)
+                .recordStats(() -> statsCounter)
+                .build();
+        // one entry per cached review; a review missing from the index is still invalidated by the change marker
+        // of its movie or the TTL
+        this.moviesOfReviews = Caffeine.newBuilder()
+                .maximumSize(maxReviews)
+                .expireAfterWrite(ttl)
+                .build();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME));
+    }
+
+    /**
+     * @param changeMarker the change marker of the movie, read before the page is loaded; null when it has none
+     */
+    public Mono<List<MovieReview>> get(String moveInfoId, int limit, String changeMarker,
+                                       Supplier<Mono<List<MovieReview>>> loader) {
+        // the load is shared with the other waiters, one of them cancelling must not cancel it
+        return Mono.fromFuture(() -> page(moveInfoId, limit, changeMarker, loader), true);
+    }
+
+    private CompletableFuture<List<MovieReview>> page(String moveInfoId, int limit, String changeMarker,
+                                                      Supplier<Mono<List<MovieReview>>> loader) {
+        // asMap() reads record no stats and do not reset the TTL of the movie
+        MoviePages moviePages = cache.asMap().get(moveInfoId);
+        if (moviePages == null || !Objects.equals(moviePages.changeMarker(), changeMarker)) {
+            // pages read after another marker are dropped with their movie entry
+            moviePages = cache.asMap().compute(moveInfoId, (id, current) ->
+                    current != null && Objects.equals(current.changeMarker(), changeMarker)
+                            ? current : new MoviePages(changeMarker, new ConcurrentHashMap<>()));
+        }
+
+        CompletableFuture<List<MovieReview>> page = moviePages.pagesByLimit().get(limit);
+        if (page != null) {
+            statsCounter.recordHits(1);
+            return page;
+        }
+        statsCounter.recordMisses(1);
+        if (moviePages.pagesByLimit().size() >= MAX_PAGES_PER_MOVIE) {
+            return loader.get().toFuture();
+        }
+
+        CompletableFuture<List<MovieReview>> loading = new CompletableFuture<>();
+        page = moviePages.pagesByLimit().putIfAbsent(limit, loading);
+        if (page != null) {
+            return page;
+        }
+        // a write invalidating the movie meanwhile drops the whole MoviePages, so this page is never served stale
+        final MoviePages loadingMoviePages = moviePages;
+        final ConcurrentMap<Integer, CompletableFuture<List<MovieReview>>> pagesByLimit = moviePages.pagesByLimit();
+        loader.get().subscribe(
+                movieReviews -> {
+                    movieReviews.forEach(movieReview -> moviesOfReviews.put(movieReview.getId(), moveInfoId));
+                    loading.complete(movieReviews);
+                    // weighs the movie again with this page, unless it was invalidated or evicted meanwhile
+                    cache.asMap().replace(moveInfoId, loadingMoviePages, loadingMoviePages);
+                },
+                ex -> {
+                    // failed loads are not cached
+                    pagesByLimit.remove(limit, loading);
+                    loading.completeExceptionally(ex);
+                },
+                () -> loading.complete(null));
+        return loading;
+    }
+
+    public void invalidate(String moveInfoId) {
+        cache.invalidate(moveInfoId);
+    }
+
+    /**
+     * For writes where only the review id is known, such as deletions read from the change stream.
+     */
+    public void invalidateReview(String reviewId) {
+        String moveInfoId = moviesOfReviews.asMap().remove(reviewId);
+        if (moveInfoId != null) {
+            cache.invalidate(moveInfoId);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        moviesOfReviews.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    // the weight of the cached movies, once pending evictions are done
+    long weightedSize() {
+        cache.cleanUp();
+        return cache.policy().eviction().orElseThrow().weightedSize().orElseThrow();
+    }
+}
@@ -0,0 +1,160 @@
+package com.bmo.moviesinforeview.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a list of values as a JSON array or as NDJSON while they are produced, in buffers of about
+ * {@code reviews.encoding.chunk-size}: the first bytes leave as soon as the first chunk is full, and no more than
+ * one chunk of encoded JSON is held per response, however long the list. Chunks are allocated from the response
+ * buffer factory, so with Netty they are pooled direct buffers.
+ */
+@Component
+public class ChunkedJsonEncoder {
+
+    private record Framing(byte[] start, byte[] separator, byte[] terminator, byte[] end) {
+    }
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final Framing JSON_ARRAY = new Framing(bytes("["), bytes(","), EMPTY, bytes("]"));
+
+    private static final Framing NDJSON = new Framing(EMPTY, EMPTY, bytes("\n"), EMPTY);
+
+    private final ObjectWriter objectWriter;
+
+    private final int chunkSize;
+
+    public ChunkedJsonEncoder(ObjectMapper objectMapper,
+                              @Value("${reviews.encoding.chunk-size:32KB}") DataSize chunkSize) {
+        // the stream is the response chunk, Jackson must not close it after each value
+        this.objectWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.chunkSize = (int) chunkSize.toBytes();
+    }
+
+    public BodyInserter<Flux<?>, ReactiveHttpOutputMessage> jsonArray(Flux<?> values) {
+        return (outputMessage, context) -> outputMessage.writeWith(
+                encodeJsonArray(values, outputMessage.bufferFactory()));
+    }
+
+    public BodyInserter<Flux<?>, ReactiveHttpOutputMessage> ndjson(Flux<?> values) {
+        return (outputMessage, context) -> outputMessage.writeWith(
+                encodeNdjson(values, outputMessage.bufferFactory()));
+    }
+
+    public Flux<DataBuffer> encodeJsonArray(Flux<?> values, DataBufferFactory bufferFactory) {
+        return encode(values, bufferFactory, JSON_ARRAY);
+    }
+
+    public Flux<DataBuffer> encodeNdjson(Flux<?> values, DataBufferFactory bufferFactory) {
+        return encode(values, bufferFactory, NDJSON);
+    }
+
+    private Flux<DataBuffer> encode(Flux<?> values, DataBufferFactory bufferFactory, Framing framing) {
+        return Flux.defer(() -> {
+            Chunk chunk = new Chunk(bufferFactory);
+            return values
+                    .<DataBuffer>handle((value, sink) -> {
+                        chunk.write(chunk.isFirstValue() ? framing.start() : framing.separator());
+                        chunk.writeValue(value);
+                        chunk.write(framing.terminator());
+                        if (chunk.size() >= chunkSize) {
+                            sink.next(chunk.take());
+                        }
+                    })
+                    .concatWith(Mono.fromSupplier(() -> {
+                        if (chunk.isFirstValue()) {
+                            chunk.write(framing.start());
+                        }
+                        chunk.write(framing.end());
+                        return chunk.take();
+                    }))
+                    .filter(dataBuffer -> {
+                        if (dataBuffer.readableByteCount() > 0) {
+                            return true;
+                        }
+                        DataBufferUtils.release(dataBuffer);
+                        return false;
+                    })
+                    .doFinally(signalType -> chunk.release());
+        });
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private final class Chunk {
+
+        private final DataBufferFactory bufferFactory;
+        private DataBuffer dataBuffer;
+        private OutputStream outputStream;
+        private boolean firstValue = true;
+
+        Chunk(DataBufferFactory bufferFactory) {
+            this.bufferFactory = bufferFactory;
+        }
+
+        boolean isFirstValue() {
+            return firstValue;
+        }
+
+        void write(byte[] bytes) {
+            if (bytes.length > 0) {
+                current().write(bytes);
+            }
+        }
+
+        void writeValue(Object value) {
+            current();
+            try {
+                objectWriter.writeValue(outputStream, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            firstValue = false;
+        }
+
+        int size() {
+            return dataBuffer == null ? 0 : dataBuffer.readableByteCount();
+        }
+
+        DataBuffer take() {
+            DataBuffer taken = current();
+            dataBuffer = null;
+            outputStream = null;
+            return taken;
+        }
+
+        void release() {
+            if (dataBuffer != null) {
+                DataBufferUtils.release(dataBuffer);
+                dataBuffer = null;
+            }
+        }
+
+        private DataBuffer current() {
+            if (dataBuffer == null) {
+                dataBuffer = bufferFactory.allocateBuffer(chunkSize + chunkSize / 4);
+                outputStream = dataBuffer.asOutputStream();
+            }
+            return dataBuffer;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.bmo.moviesinforeview.config;
+
+import com.bmo.moviesinforeview.repository.BlockingMovieReviewRepository;
+import com.bmo.moviesinforeview.repository.BlockingRepositoryAdapter;
+import com.bmo.moviesinforeview.repository.MovieReviewRepository;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+/**
+ * The {@code blocking} profile: the same routes and handler, but reviews are read and written with the blocking
+ * driver, one virtual thread per repository call, instead of the reactive driver. It exists to measure what the
+ * reactive driver buys, see {@code ./gradlew loadTestBlocking}; the stats documents stay on the reactive driver.
+ */
+@Configuration
+@Profile("blocking")
+public class BlockingExecutionConfig {
+
+    @Bean(destroyMethod = "dispose")
+    Scheduler virtualThreadScheduler() {
+        return Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "reviews-virtual");
+    }
+
+    @Bean
+    @Primary
+    MovieReviewRepository blockingMovieReviewRepositoryAdapter(BlockingMovieReviewRepository blockingMovieReviewRepository,
+                                                               Scheduler virtualThreadScheduler) {
+        return BlockingRepositoryAdapter.create(MovieReviewRepository.class, BlockingMovieReviewRepository.class,
+                blockingMovieReviewRepository, virtualThreadScheduler);
+    }
+}
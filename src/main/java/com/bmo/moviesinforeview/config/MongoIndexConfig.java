@@ -0,0 +1,55 @@
+package com.bmo.moviesinforeview.config;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Creates the indexes declared on the mapped documents once the application is ready.
+ * Index creation is idempotent, so instances starting together do not conflict.
+ */
+@Configuration
+@ConditionalOnProperty(name = "reviews.mongo.ensure-indexes", havingValue = "true", matchIfMissing = true)
+public class MongoIndexConfig {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MongoIndexConfig.class);
+
+    private static final List<Class<?>> INDEXED_DOCUMENTS = List.of(MovieReview.class, MovieReviewRollup.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MongoIndexConfig(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        ensureIndexes().subscribe(
+                        indexName -> LOGGER.info("Ensured index {}", indexName),
+                        ex -> LOGGER.error("Could not ensure indexes: {}", ex.getMessage())
+                );
+    }
+
+    public Flux<String> ensureIndexes() {
+        MongoPersistentEntityIndexResolver indexResolver =
+                new MongoPersistentEntityIndexResolver(reactiveMongoTemplate.getConverter().getMappingContext());
+
+        return Flux.fromIterable(INDEXED_DOCUMENTS)
+                .concatMap(documentType -> {
+                    ReactiveIndexOperations indexOperations = reactiveMongoTemplate.indexOps(documentType);
+                    return Flux.fromIterable(indexResolver.resolveIndexFor(documentType))
+                            .concatMap(indexOperations::ensureIndex);
+                });
+    }
+}
@@ -0,0 +1,41 @@
+package com.bmo.moviesinforeview.config;
+
+import com.bmo.moviesinforeview.domain.BatchItemResult;
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewGroup;
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
+import com.bmo.moviesinforeview.domain.ReviewEvent;
+import com.bmo.moviesinforeview.domain.ReviewSearchHit;
+import com.bmo.moviesinforeview.domain.ReviewStreamCheckpoint;
+import com.bmo.moviesinforeview.domain.ReviewsByMoviesRequest;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import java.util.List;
+
+/**
+ * Reflection a native image cannot discover on its own. The functional routes read and write the domain types
+ * through Jackson without any controller signature for AOT to infer them from; their Lombok accessors and
+ * constructors, and the fields Bean Validation and the Mongo mapping read, must be kept. The routes themselves
+ * are plain lambdas registered from bean methods and need no hints.
+ */
+public class NativeRuntimeHints implements RuntimeHintsRegistrar {
+
+    static final List<Class<?>> DOMAIN_TYPES = List.of(MovieReview.class, MovieReviewStats.class, ReviewEvent.class,
+            ReviewEvent.Type.class, BatchItemResult.class, ReviewStreamCheckpoint.class, ReviewSearchHit.class,
+            ReviewsByMoviesRequest.class, MovieReviewGroup.class, MovieReviewRollup.class, MovieReviewRollup.Bucket.class);
+
+    private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> domainType : DOMAIN_TYPES) {
+            bindingRegistrar.registerReflectionHints(hints.reflection(), domainType);
+            hints.reflection().registerType(domainType, MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS);
+        }
+    }
+}
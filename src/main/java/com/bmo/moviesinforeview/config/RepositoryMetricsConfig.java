@@ -0,0 +1,33 @@
+package com.bmo.moviesinforeview.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+/**
+ * Adds {@link RepositoryMetricsInterceptor} to every repository, so each call is timed as
+ * {@value RepositoryMetricsInterceptor#METRIC_NAME} tagged with the repository, the method and the outcome.
+ */
+@Configuration
+public class RepositoryMetricsConfig {
+
+    // static, post processors are created before the regular beans
+    @Bean
+    static BeanPostProcessor repositoryMetricsBeanPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> repositoryFactoryBean) {
+                    repositoryFactoryBean.addRepositoryFactoryCustomizer(repositoryFactory ->
+                            repositoryFactory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) ->
+                                    meterRegistry.ifAvailable(registry -> proxyFactory.addAdvice(
+                                            new RepositoryMetricsInterceptor(registry, repositoryInformation.getRepositoryInterface())))));
+                }
+                return bean;
+            }
+        };
+    }
+}
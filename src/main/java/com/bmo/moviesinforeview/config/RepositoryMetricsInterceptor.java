@@ -0,0 +1,78 @@
+package com.bmo.moviesinforeview.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times repository calls from subscription to completion, error or cancellation, which is when the Mongo
+ * round trip actually happens: a reactive repository method itself returns before any I/O. Calls of blocking
+ * repositories are timed around the call.
+ */
+class RepositoryMetricsInterceptor implements MethodInterceptor {
+
+    static final String METRIC_NAME = "reviews.repository.invocations";
+
+    private final MeterRegistry meterRegistry;
+    private final String repository;
+
+    // the timers of a method are looked up on every call, keep the tag building off that path
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    RepositoryMetricsInterceptor(MeterRegistry meterRegistry, Class<?> repositoryInterface) {
+        this.meterRegistry = meterRegistry;
+        this.repository = repositoryInterface.getSimpleName();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String method = invocation.getMethod().getName();
+        Object result;
+        // blocking repositories of the blocking profile do their work before returning
+        long blockingStart = System.nanoTime();
+        try {
+            result = invocation.proceed();
+        } catch (Throwable ex) {
+            record(method, SignalType.ON_ERROR, blockingStart);
+            throw ex;
+        }
+
+        if (result instanceof Mono<?> mono) {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return mono.doFinally(signalType -> record(method, signalType, start));
+            });
+        }
+        if (result instanceof Flux<?> flux) {
+            return Flux.defer(() -> {
+                long start = System.nanoTime();
+                return flux.doFinally(signalType -> record(method, signalType, start));
+            });
+        }
+        record(method, SignalType.ON_COMPLETE, blockingStart);
+        return result;
+    }
+
+    private void record(String method, SignalType signalType, long start) {
+        String state = switch (signalType) {
+            case ON_ERROR -> "ERROR";
+            case CANCEL -> "CANCELED";
+            default -> "SUCCESS";
+        };
+        timers.computeIfAbsent(method + '#' + state, key -> Timer.builder(METRIC_NAME)
+                        .description("Duration of review repository calls")
+                        .tag("repository", repository)
+                        .tag("method", method)
+                        .tag("state", state)
+                        .register(meterRegistry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -8,20 +8,37 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+@CompoundIndex(name = "moveInfoId_id", def = "{'moveInfoId': 1, '_id': 1}")
+@CompoundIndex(name = "moveInfoId_rating_id", def = "{'moveInfoId': 1, 'rating': -1, '_id': 1}")
 @Builder
 public class MovieReview {
     @Id
     private String id;
 
     @NotNull(message = "rating.move: value must not be null")
+    @Indexed(name = "moveInfoId")
     private String moveInfoId;
+    // searched by GET /v1/reviews/search; a collection has at most one text index
+    @TextIndexed
     private String comment;
     @Min(value = 0l, message = "rating.negative: rating is negative, pls provide a positive value")
     private double rating;
+    @Version
+    private Long version;
+    // set by the server on every insert and update
+    private Instant lastModified;
+    // set by the server on insert; reviews written before it existed have the time in their id
+    private Instant createdAt;
 }
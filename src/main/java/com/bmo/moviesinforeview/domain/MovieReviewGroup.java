@@ -0,0 +1,21 @@
+package com.bmo.moviesinforeview.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The reviews of one movie in a {@code POST /v1/reviews/by-movies} answer, in id order.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MovieReviewGroup {
+    private String moveInfoId;
+    // reviews, or maps of the selected fields when narrowed with fields=
+    private List<?> reviews;
+}
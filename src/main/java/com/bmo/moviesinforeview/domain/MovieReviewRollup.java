@@ -0,0 +1,89 @@
+package com.bmo.moviesinforeview.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+/**
+ * The ratings of the reviews of a movie created within one hour or one day (UTC), maintained on every write like
+ * {@link MovieReviewStats}, so a rating trend reads one small document per bucket and never the reviews.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+@CompoundIndex(name = "moveInfoId_bucket_start", def = "{'moveInfoId': 1, 'bucket': 1, 'start': 1}")
+@Builder
+public class MovieReviewRollup {
+    public enum Bucket {
+        HOUR(ChronoUnit.HOURS),
+        DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Bucket(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        public Duration getDuration() {
+            return unit.getDuration();
+        }
+
+        public Instant startOf(Instant instant) {
+            return instant.truncatedTo(unit);
+        }
+
+        /**
+         * @return the number of buckets from the one holding {@code from} up to {@code to}, excluded
+         */
+        public long count(Instant from, Instant to) {
+            return unit.between(startOf(from), to.minusNanos(1)) + 1;
+        }
+    }
+
+    // moveInfoId, bucket and start, so concurrent first writes to a bucket upsert the same document
+    @Id
+    @JsonIgnore
+    private String id;
+
+    private String moveInfoId;
+    private Bucket bucket;
+    private Instant start;
+
+    private long count;
+    private double sum;
+    // rating bucket (rating rounded down) -> number of reviews, as in MovieReviewStats
+    private Map<String, Long> histogram;
+
+    public Double getMean() {
+        return count > 0 ? sum / count : null;
+    }
+
+    public static String idOf(String moveInfoId, Bucket bucket, Instant start) {
+        return moveInfoId + "|" + bucket + "|" + start;
+    }
+
+    /**
+     * When the review was created; reviews written before createdAt existed fall back to the time in their id.
+     */
+    public static Instant createdAtOf(MovieReview movieReview) {
+        if (movieReview.getCreatedAt() != null) {
+            return movieReview.getCreatedAt();
+        }
+        if (movieReview.getId() != null && ObjectId.isValid(movieReview.getId())) {
+            return new ObjectId(movieReview.getId()).getDate().toInstant();
+        }
+        return null;
+    }
+}
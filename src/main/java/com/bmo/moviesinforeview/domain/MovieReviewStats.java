@@ -0,0 +1,39 @@
+package com.bmo.moviesinforeview.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+@Builder
+public class MovieReviewStats {
+    @Id
+    private String moveInfoId;
+
+    private long count;
+    private double sum;
+    private Double min;
+    private Double max;
+    // rating bucket (rating rounded down) -> number of reviews
+    private Map<String, Long> histogram;
+    // change marker of the reviews of the movie: bumped, with lastModified, by every add, update and delete
+    private long version;
+    private Instant lastModified;
+
+    public Double getMean() {
+        return count > 0 ? sum / count : null;
+    }
+
+    public static String histogramBucket(double rating) {
+        return String.valueOf((long) Math.floor(rating));
+    }
+}
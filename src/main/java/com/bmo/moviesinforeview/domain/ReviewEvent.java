@@ -0,0 +1,31 @@
+package com.bmo.moviesinforeview.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReviewEvent {
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    // change stream resume token, null for events published by this instance only
+    private String id;
+    private Type type;
+    // for deletions read from the change stream only the review id is known
+    private MovieReview review;
+
+    public static ReviewEvent of(Type type, MovieReview review) {
+        return ReviewEvent.builder()
+                .type(type)
+                .review(review)
+                .build();
+    }
+}
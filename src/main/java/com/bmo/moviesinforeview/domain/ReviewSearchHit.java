@@ -0,0 +1,29 @@
+package com.bmo.moviesinforeview.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A review matching a search, with the relevance of its comment as computed by the Mongo text index.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReviewSearchHit {
+    private String id;
+    private String moveInfoId;
+    private String comment;
+    private double rating;
+    private Long version;
+    private double score;
+
+    /**
+     * The {@code after} cursor of the page following this hit: hits are ordered by score, then id.
+     */
+    public String cursor() {
+        return score + "_" + id;
+    }
+}
@@ -0,0 +1,23 @@
+package com.bmo.moviesinforeview.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+@Builder
+public class ReviewStreamCheckpoint {
+    @Id
+    private String id;
+
+    private String resumeToken;
+    private Instant updatedAt;
+}
@@ -0,0 +1,21 @@
+package com.bmo.moviesinforeview.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Body of {@code POST /v1/reviews/by-movies}: the movies whose reviews are wanted, and how many reviews of each.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReviewsByMoviesRequest {
+    private List<String> moveInfoIds;
+    // reviews per movie, reviews.page.default-limit when absent
+    private Integer limit;
+}
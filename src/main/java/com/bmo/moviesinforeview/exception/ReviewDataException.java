@@ -3,8 +3,20 @@ package com.bmo.moviesinforeview.exception;
 public class ReviewDataException extends RuntimeException {
     private String msg;
 
+    // the message quotes the request, such as a value it sent; such messages are not cached as error bodies
+    private final boolean quotesRequest;
+
     public ReviewDataException(String message) {
-        super(message);
+        this(message, false);
+    }
+
+    public ReviewDataException(String message, boolean quotesRequest) {
+        super(message, null, false, false);
         this.msg = message;
+        this.quotesRequest = quotesRequest;
+    }
+
+    public boolean quotesRequest() {
+        return quotesRequest;
     }
 }
@@ -4,7 +4,7 @@ public class ReviewNotFoundException extends RuntimeException {
     private String message;
 
     public ReviewNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
         this.message = message;
     }
 }
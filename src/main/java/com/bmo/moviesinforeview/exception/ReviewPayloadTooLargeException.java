@@ -0,0 +1,10 @@
+package com.bmo.moviesinforeview.exception;
+
+public class ReviewPayloadTooLargeException extends RuntimeException {
+    private String message;
+
+    public ReviewPayloadTooLargeException(String message) {
+        super(message, null, false, false);
+        this.message = message;
+    }
+}
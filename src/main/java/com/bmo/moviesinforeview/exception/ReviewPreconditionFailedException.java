@@ -0,0 +1,22 @@
+package com.bmo.moviesinforeview.exception;
+
+public class ReviewPreconditionFailedException extends RuntimeException {
+    private String message;
+
+    // the message quotes the request, such as a value it sent; such messages are not cached as error bodies
+    private final boolean quotesRequest;
+
+    public ReviewPreconditionFailedException(String message) {
+        this(message, false);
+    }
+
+    public ReviewPreconditionFailedException(String message, boolean quotesRequest) {
+        super(message, null, false, false);
+        this.message = message;
+        this.quotesRequest = quotesRequest;
+    }
+
+    public boolean quotesRequest() {
+        return quotesRequest;
+    }
+}
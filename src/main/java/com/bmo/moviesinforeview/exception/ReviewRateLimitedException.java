@@ -0,0 +1,18 @@
+package com.bmo.moviesinforeview.exception;
+
+import java.time.Duration;
+
+public class ReviewRateLimitedException extends RuntimeException {
+    private String message;
+    private Duration retryAfter;
+
+    public ReviewRateLimitedException(String message, Duration retryAfter) {
+        super(message, null, false, false);
+        this.message = message;
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
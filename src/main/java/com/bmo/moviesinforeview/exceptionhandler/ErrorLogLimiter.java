@@ -0,0 +1,54 @@
+package com.bmo.moviesinforeview.exceptionhandler;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets through at most {@code limit} log statements per exception type and interval, and counts the others
+ * so the next statement that gets through can report how many were suppressed.
+ */
+class ErrorLogLimiter {
+
+    static final long SUPPRESSED = -1;
+
+    private final int limit;
+    private final long intervalNanos;
+    private final Map<Class<?>, Window> windows = new ConcurrentHashMap<>();
+
+    ErrorLogLimiter(int limit, Duration interval) {
+        this.limit = limit;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    /**
+     * @return {@link #SUPPRESSED} when the exception must not be logged, otherwise the number of exceptions of
+     * the same type suppressed since the last one logged
+     */
+    long tryAcquire(Class<?> exceptionType) {
+        return windows.computeIfAbsent(exceptionType, type -> new Window())
+                .tryAcquire(System.nanoTime(), limit, intervalNanos);
+    }
+
+    private static final class Window {
+
+        private long start = System.nanoTime();
+        private int logged;
+        private long suppressed;
+
+        synchronized long tryAcquire(long now, int limit, long intervalNanos) {
+            if (now - start >= intervalNanos) {
+                start = now;
+                logged = 0;
+            }
+            if (logged < limit) {
+                logged++;
+                long suppressedSinceLastLogged = suppressed;
+                suppressed = 0;
+                return suppressedSinceLastLogged;
+            }
+            suppressed++;
+            return SUPPRESSED;
+        }
+    }
+}
@@ -2,41 +2,205 @@ package com.bmo.moviesinforeview.exceptionhandler;
 
 import com.bmo.moviesinforeview.exception.ReviewDataException;
 import com.bmo.moviesinforeview.exception.ReviewNotFoundException;
+import com.bmo.moviesinforeview.exception.ReviewOverloadedException;
+import com.bmo.moviesinforeview.exception.ReviewPayloadTooLargeException;
+import com.bmo.moviesinforeview.exception.ReviewPreconditionFailedException;
+import com.bmo.moviesinforeview.exception.ReviewRateLimitedException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.reactive.error.ErrorWebExceptionHandler;
-import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 
+/**
+ * Answers every error with an RFC 7807 {@code application/problem+json} body.
+ * <p>
+ * Error responses are cheap enough to survive a scan: the encoded bodies are cached by status and detail when
+ * the detail is fixed, client errors are logged at DEBUG without a stack trace, and server errors are logged at most
+ * {@code reviews.errors.log-limit} times per exception type and {@code reviews.errors.log-interval}.
+ * The message of an unexpected exception is never sent to the client.
+ */
 @Component
+// ahead of WebFlux's own ResponseStatusException handler, so unknown routes and unsupported methods get a problem too
+@Order(-2)
 public class GlobalErrorHandler implements ErrorWebExceptionHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GlobalErrorHandler.class);
 
+    private record ErrorBodyKey(int status, String detail) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Cache<ErrorBodyKey, byte[]> errorBodies;
+    private final ErrorLogLimiter errorLogLimiter;
+
+    public GlobalErrorHandler(ObjectMapper objectMapper,
+                              @Value("${reviews.errors.body-cache-size:1024}") long bodyCacheSize,
+                              @Value("${reviews.errors.log-limit:10}") int logLimit,
+                              @Value("${reviews.errors.log-interval:1m}") Duration logInterval) {
+        this.objectMapper = objectMapper;
+        this.errorBodies = Caffeine.newBuilder()
+                .maximumSize(bodyCacheSize)
+                .build();
+        this.errorLogLimiter = new ErrorLogLimiter(logLimit, logInterval);
+    }
+
     @Override
     public Mono<Void> handle(ServerWebExchange exchange, Throwable ex) {
-        LOGGER.error("Exception msg is: {}", ex.getMessage(), ex);
+        ServerHttpResponse response = exchange.getResponse();
+        if (response.isCommitted()) {
+            return Mono.error(ex);
+        }
 
-        DataBufferFactory dataBufferFactory = exchange.getResponse().bufferFactory();
-        DataBuffer dataBufferWithErrorMsg = dataBufferFactory.wrap(ex.getMessage().getBytes(StandardCharsets.UTF_8));
+        HttpStatusCode status = statusOf(ex);
+        log(status, ex);
+
+        final String detail = detailOf(status, ex);
+        byte[] body = isFixed(status, ex, detail) ? cachedErrorBody(status, detail) : errorBody(status, detail);
+        response.setStatusCode(status);
+        // validators set for the response that failed do not describe the problem
+        response.getHeaders().remove(HttpHeaders.ETAG);
+        response.getHeaders().remove(HttpHeaders.LAST_MODIFIED);
+        if (ex instanceof ResponseStatusException responseStatusException) {
+            // such as Allow on a 405
+            response.getHeaders().addAll(responseStatusException.getHeaders());
+        }
+        if (ex instanceof ReviewRateLimitedException rateLimitedException) {
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(rateLimitedException.getRetryAfter().toSeconds()));
+        }
+        if (ex instanceof ReviewOverloadedException overloadedException) {
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(overloadedException.getRetryAfter().toSeconds()));
+        }
+        response.getHeaders().setContentType(MediaType.APPLICATION_PROBLEM_JSON);
+        response.getHeaders().setContentLength(body.length);
+        // a cached array is only ever read, it can back the response without a copy
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
 
+    private static HttpStatusCode statusOf(Throwable ex) {
         if (ex instanceof ReviewDataException) {
-            exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
-            return exchange.getResponse().writeWith(Mono.just(dataBufferWithErrorMsg));
+            return HttpStatus.BAD_REQUEST;
         }
 
         if (ex instanceof ReviewNotFoundException) {
-            exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
-            return exchange.getResponse().writeWith(Mono.just(dataBufferWithErrorMsg));
+            return HttpStatus.NOT_FOUND;
+        }
+
+        if (ex instanceof ReviewPreconditionFailedException) {
+            return HttpStatus.PRECONDITION_FAILED;
+        }
+
+        if (ex instanceof ReviewPayloadTooLargeException) {
+            return HttpStatus.PAYLOAD_TOO_LARGE;
+        }
+
+        if (ex instanceof ReviewRateLimitedException) {
+            return HttpStatus.TOO_MANY_REQUESTS;
+        }
+
+        if (ex instanceof ReviewOverloadedException) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+
+        if (ex instanceof ResponseStatusException responseStatusException) {
+            return responseStatusException.getStatusCode();
+        }
+
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    private static String detailOf(HttpStatusCode status, Throwable ex) {
+        String detail = null;
+        if (ex instanceof ResponseStatusException responseStatusException) {
+            detail = responseStatusException.getReason();
+        } else if (!status.is5xxServerError() || ex instanceof ReviewOverloadedException) {
+            detail = ex.getMessage();
+        }
+        return detail != null ? detail : reasonPhrase(status);
+    }
+
+    private static String reasonPhrase(HttpStatusCode status) {
+        HttpStatus httpStatus = HttpStatus.resolve(status.value());
+        return httpStatus != null ? httpStatus.getReasonPhrase() : "Error";
+    }
+
+    /**
+     * Whether the detail is one of a bounded set, so its body can be cached: the reason phrase, or the message of an
+     * exception of this service that does not quote the request. Reasons of other exceptions, such as the method of
+     * a 405, may quote the request; caching those would let any client fill the cache and evict the fixed bodies.
+     */
+    private static boolean isFixed(HttpStatusCode status, Throwable ex, String detail) {
+        if (detail.equals(reasonPhrase(status))) {
+            return true;
+        }
+        if (ex instanceof ReviewDataException dataException) {
+            return !dataException.quotesRequest();
+        }
+        if (ex instanceof ReviewPreconditionFailedException preconditionFailedException) {
+            return !preconditionFailedException.quotesRequest();
+        }
+        return ex instanceof ReviewNotFoundException
+                || ex instanceof ReviewPayloadTooLargeException
+                || ex instanceof ReviewRateLimitedException
+                || ex instanceof ReviewOverloadedException;
+    }
+
+    private byte[] cachedErrorBody(HttpStatusCode status, String detail) {
+        return errorBodies.get(new ErrorBodyKey(status.value(), detail), key -> errorBody(status, detail));
+    }
+
+    private byte[] errorBody(HttpStatusCode status, String detail) {
+        ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(status, detail);
+        problemDetail.setTitle(reasonPhrase(status));
+        try {
+            return objectMapper.writeValueAsBytes(problemDetail);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        exchange.getResponse().setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
-        return exchange.getResponse().writeWith(Mono.just(dataBufferWithErrorMsg));
+    /**
+     * @return the number of error bodies cached
+     */
+    long cachedErrorBodies() {
+        errorBodies.cleanUp();
+        return errorBodies.estimatedSize();
+    }
+
+    private void log(HttpStatusCode status, Throwable ex) {
+        // shedding load is expected, not an error of this service
+        if (!status.is5xxServerError() || ex instanceof ReviewOverloadedException) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Answering {}: {}", status.value(), ex.getMessage());
+            }
+            return;
+        }
+
+        long suppressed = errorLogLimiter.tryAcquire(ex.getClass());
+        if (suppressed == ErrorLogLimiter.SUPPRESSED) {
+            return;
+        }
+        if (suppressed > 0) {
+            LOGGER.error("Exception msg is: {} ({} more {} not logged)", ex.getMessage(), suppressed, ex.getClass().getSimpleName(), ex);
+        } else {
+            LOGGER.error("Exception msg is: {}", ex.getMessage(), ex);
+        }
     }
 }
@@ -0,0 +1,133 @@
+package com.bmo.moviesinforeview.handler;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.metadata.BeanDescriptor;
+import jakarta.validation.metadata.ConstraintDescriptor;
+import jakarta.validation.metadata.PropertyDescriptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Validates reviews on the write path without calling Bean Validation per request. The constraints are read once
+ * from the Bean Validation metadata of {@link MovieReview}, so its annotations and messages stay the reference,
+ * and compiled to plain getter checks. The errors of every combination of failed checks are joined up front in
+ * the order Bean Validation messages were reported in, sorted, so validating a review builds no string.
+ * <p>
+ * Only {@code @NotNull} and {@code @Min} with literal messages are compiled; any other constraint on
+ * {@link MovieReview} fails the startup rather than being skipped. Comments are also limited to
+ * {@code reviews.comment.max-length} characters.
+ */
+@Component
+public class MovieReviewValidator {
+
+    // JSON may escape every character as \\uXXXX, other fields of a review are short
+    private static final int BYTES_PER_COMMENT_CHARACTER = 6;
+    private static final int BYTES_OUTSIDE_COMMENT = 1024;
+
+    private record Check(String message, Predicate<MovieReview> violated) {
+    }
+
+    private static final Map<String, Function<MovieReview, Object>> OBJECT_PROPERTIES = Map.of(
+            "moveInfoId", MovieReview::getMoveInfoId,
+            "comment", MovieReview::getComment);
+
+    private static final Map<String, ToDoubleFunction<MovieReview>> DOUBLE_PROPERTIES = Map.of(
+            "rating", MovieReview::getRating);
+
+    private final Check[] checks;
+
+    // indexed by the bit set of the failed checks, null when none failed
+    private final String[] errorsByFailedChecks;
+
+    private final long maxBodyBytes;
+
+    public MovieReviewValidator(Validator validator,
+                                @Value("${reviews.comment.max-length:2000}") int maxCommentLength) {
+        List<Check> checkList = compile(validator.getConstraintsForClass(MovieReview.class));
+        checkList.add(new Check("comment.length: comment must be at most " + maxCommentLength + " characters",
+                movieReview -> movieReview.getComment() != null && movieReview.getComment().length() > maxCommentLength));
+        checkList.sort(Comparator.comparing(Check::message));
+        if (checkList.size() > 16) {
+            throw new IllegalStateException("Too many constraints on MovieReview to precompute their errors: " + checkList.size());
+        }
+
+        this.checks = checkList.toArray(Check[]::new);
+        this.errorsByFailedChecks = new String[1 << checks.length];
+        for (int failedChecks = 1; failedChecks < errorsByFailedChecks.length; failedChecks++) {
+            List<String> messages = new ArrayList<>(checks.length);
+            for (int i = 0; i < checks.length; i++) {
+                if ((failedChecks & (1 << i)) != 0) {
+                    messages.add(checks[i].message());
+                }
+            }
+            errorsByFailedChecks[failedChecks] = String.join(", ", messages);
+        }
+        this.maxBodyBytes = (long) BYTES_PER_COMMENT_CHARACTER * maxCommentLength + BYTES_OUTSIDE_COMMENT;
+    }
+
+    /**
+     * @return the messages of the failed constraints, sorted and joined with ", ", when the review is invalid
+     */
+    public Optional<String> findErrors(MovieReview movieReview) {
+        int failedChecks = 0;
+        for (int i = 0; i < checks.length; i++) {
+            if (checks[i].violated().test(movieReview)) {
+                failedChecks |= 1 << i;
+            }
+        }
+        return Optional.ofNullable(errorsByFailedChecks[failedChecks]);
+    }
+
+    /**
+     * @return the size no body of a single valid review can exceed, so larger ones can be refused unread
+     */
+    public long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    private static List<Check> compile(BeanDescriptor beanDescriptor) {
+        if (!beanDescriptor.getConstraintDescriptors().isEmpty()) {
+            throw new IllegalStateException("Class-level constraints on MovieReview are not supported");
+        }
+
+        List<Check> checkList = new ArrayList<>();
+        for (PropertyDescriptor propertyDescriptor : beanDescriptor.getConstrainedProperties()) {
+            for (ConstraintDescriptor<?> constraintDescriptor : propertyDescriptor.getConstraintDescriptors()) {
+                checkList.add(compile(propertyDescriptor.getPropertyName(), constraintDescriptor));
+            }
+        }
+        return checkList;
+    }
+
+    private static Check compile(String property, ConstraintDescriptor<?> constraintDescriptor) {
+        String message = constraintDescriptor.getMessageTemplate();
+        if (message.contains("{")) {
+            throw new IllegalStateException("Interpolated message of " + property + " is not supported: " + message);
+        }
+
+        Function<MovieReview, Object> objectGetter = OBJECT_PROPERTIES.get(property);
+        ToDoubleFunction<MovieReview> doubleGetter = DOUBLE_PROPERTIES.get(property);
+        if (constraintDescriptor.getAnnotation() instanceof NotNull && objectGetter != null) {
+            return new Check(message, movieReview -> objectGetter.apply(movieReview) == null);
+        }
+        if (constraintDescriptor.getAnnotation() instanceof Min min && doubleGetter != null) {
+            final long minValue = min.value();
+            // NaN is below any minimum for Bean Validation too
+            return new Check(message, movieReview -> !(doubleGetter.applyAsDouble(movieReview) >= minValue));
+        }
+        throw new IllegalStateException("Constraint " + constraintDescriptor.getAnnotation().annotationType().getSimpleName()
+                + " on " + property + " is not supported");
+    }
+}
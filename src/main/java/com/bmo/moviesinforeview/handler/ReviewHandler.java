@@ -1,110 +1,822 @@
 package com.bmo.moviesinforeview.handler;
 
+import com.bmo.moviesinforeview.cache.ReviewsByMovieCache;
+import com.bmo.moviesinforeview.codec.ChunkedJsonEncoder;
+import com.bmo.moviesinforeview.domain.BatchItemResult;
 import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewGroup;
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
+import com.bmo.moviesinforeview.domain.ReviewEvent;
+import com.bmo.moviesinforeview.domain.ReviewSearchHit;
+import com.bmo.moviesinforeview.domain.ReviewsByMoviesRequest;
 import com.bmo.moviesinforeview.exception.ReviewDataException;
 import com.bmo.moviesinforeview.exception.ReviewNotFoundException;
+import com.bmo.moviesinforeview.exception.ReviewPayloadTooLargeException;
+import com.bmo.moviesinforeview.exception.ReviewPreconditionFailedException;
 import com.bmo.moviesinforeview.repository.MovieReviewRepository;
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.Validator;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.bmo.moviesinforeview.repository.MovieReviewRollupRepository;
+import com.bmo.moviesinforeview.repository.MovieReviewStatsRepository;
+import com.bmo.moviesinforeview.repository.ReviewWriteBehind;
+import com.bmo.moviesinforeview.stream.ChangeStreamReviewPublisher;
+import com.bmo.moviesinforeview.stream.ReviewBroadcaster;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Component
 public class ReviewHandler {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final Sort BY_ID = Sort.by(Sort.Direction.ASC, "id");
+
+    // the fields a list can be narrowed to with fields=, in the order they are written
+    static final List<String> SELECTABLE_FIELDS = List.of("id", "moveInfoId", "comment", "rating", "version");
+
     private MovieReviewRepository movieReviewRepository;
 
-    private Validator validator;
+    private MovieReviewStatsRepository movieReviewStatsRepository;
+
+    private MovieReviewRollupRepository movieReviewRollupRepository;
+
+    private MovieReviewValidator movieReviewValidator;
+
+    private ReviewBroadcaster reviewBroadcaster;
+
+    private ObjectProvider<ChangeStreamReviewPublisher> changeStreamReviewPublisher;
+
+    private ReviewsByMovieCache reviewsByMovieCache;
+
+    private ChunkedJsonEncoder chunkedJsonEncoder;
+
+    // null unless reviews.write-behind.enabled
+    private ReviewWriteBehind reviewWriteBehind;
 
-    private Sinks.Many<MovieReview> sink = Sinks.many().replay().latest();
+    private final int defaultPageLimit;
 
-    public ReviewHandler(MovieReviewRepository movieReviewRepository, Validator validator) {
+    private final int defaultTopLimit;
+
+    private final int maxPageLimit;
+
+    private final int batchChunkSize;
+
+    private final int maxMoviesPerLookup;
+
+    private final int maxTrendBuckets;
+
+    public ReviewHandler(MovieReviewRepository movieReviewRepository,
+                         MovieReviewStatsRepository movieReviewStatsRepository,
+                         MovieReviewRollupRepository movieReviewRollupRepository,
+                         MovieReviewValidator movieReviewValidator,
+                         ReviewBroadcaster reviewBroadcaster,
+                         ObjectProvider<ChangeStreamReviewPublisher> changeStreamReviewPublisher,
+                         ReviewsByMovieCache reviewsByMovieCache,
+                         ChunkedJsonEncoder chunkedJsonEncoder,
+                         ObjectProvider<ReviewWriteBehind> reviewWriteBehind,
+                         @Value("${reviews.page.default-limit:100}") int defaultPageLimit,
+                         @Value("${reviews.top.default-limit:10}") int defaultTopLimit,
+                         @Value("${reviews.page.max-limit:1000}") int maxPageLimit,
+                         @Value("${reviews.batch.chunk-size:500}") int batchChunkSize,
+                         @Value("${reviews.by-movies.max-movies:100}") int maxMoviesPerLookup,
+                         @Value("${reviews.trend.max-buckets:1000}") int maxTrendBuckets) {
         this.movieReviewRepository = movieReviewRepository;
-        this.validator = validator;
+        this.movieReviewStatsRepository = movieReviewStatsRepository;
+        this.movieReviewRollupRepository = movieReviewRollupRepository;
+        this.movieReviewValidator = movieReviewValidator;
+        this.reviewBroadcaster = reviewBroadcaster;
+        this.changeStreamReviewPublisher = changeStreamReviewPublisher;
+        this.reviewsByMovieCache = reviewsByMovieCache;
+        this.chunkedJsonEncoder = chunkedJsonEncoder;
+        this.reviewWriteBehind = reviewWriteBehind.getIfAvailable();
+        this.defaultPageLimit = defaultPageLimit;
+        this.defaultTopLimit = defaultTopLimit;
+        this.maxPageLimit = maxPageLimit;
+        this.batchChunkSize = batchChunkSize;
+        this.maxMoviesPerLookup = maxMoviesPerLookup;
+        this.maxTrendBuckets = maxTrendBuckets;
     }
 
     public Mono<ServerResponse> addReview(ServerRequest request) {
+        checkBodySize(request);
         return request.bodyToMono(MovieReview.class)
                 .doOnNext(this::validateBody)
-                .flatMap(movieReviewRepository::save)
-                .doOnNext(sink::tryEmitNext)
-                .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
+                // the version is owned by the server, a new review always starts at 0
+                .doOnNext(movieReview -> {
+                    final Instant now = now();
+                    movieReview.setVersion(null);
+                    movieReview.setCreatedAt(now);
+                    movieReview.setLastModified(now);
+                })
+                .flatMap(this::insertReview)
+                .doOnNext(savedMovieReview -> reviewsByMovieCache.invalidate(savedMovieReview.getMoveInfoId()))
+                .doOnNext(savedMovieReview -> reviewBroadcaster.publishLocal(
+                        ReviewEvent.of(ReviewEvent.Type.CREATED, savedMovieReview)))
+                .flatMap(savedMovieReview -> ServerResponse.status(HttpStatus.CREATED)
+                        .headers(eTag(savedMovieReview))
+                        .bodyValue(savedMovieReview));
+    }
+
+    private Mono<MovieReview> insertReview(MovieReview movieReview) {
+        if (reviewWriteBehind != null) {
+            return reviewWriteBehind.insert(movieReview);
+        }
+        return movieReviewRepository.save(movieReview)
+                .flatMap(savedMovieReview -> movieReviewStatsRepository.recordAdded(savedMovieReview)
+                        .thenReturn(savedMovieReview));
+    }
+
+    /**
+     * Accepts a JSON array or NDJSON of reviews and answers with one NDJSON result per review, in upload order.
+     * The upload is decoded as a stream and inserted chunk by chunk, so memory is bounded by the chunk size.
+     */
+    public Mono<ServerResponse> addReviews(ServerRequest request) {
+        Flux<BatchItemResult> batchItemResultFlux = request.bodyToFlux(MovieReview.class)
+                .index()
+                .buffer(batchChunkSize)
+                .concatMap(this::insertChunk, 1)
+                .onErrorResume(DecodingException.class, ex -> Mono.just(BatchItemResult.builder()
+                        .status(BatchItemResult.INVALID)
+                        .error(ex.getMessage())
+                        .build()));
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(batchItemResultFlux, BatchItemResult.class);
+    }
+
+    private Flux<BatchItemResult> insertChunk(List<Tuple2<Long, MovieReview>> chunk) {
+        final Instant lastModified = now();
+        BatchItemResult[] results = new BatchItemResult[chunk.size()];
+        List<MovieReview> validMovieReviews = new ArrayList<>(chunk.size());
+        List<Integer> validPositions = new ArrayList<>(chunk.size());
+
+        for (int position = 0; position < chunk.size(); position++) {
+            final long index = chunk.get(position).getT1();
+            final MovieReview movieReview = chunk.get(position).getT2();
+            Optional<String> errors = findValidationErrors(movieReview);
+            if (errors.isPresent()) {
+                results[position] = BatchItemResult.builder()
+                        .index(index)
+                        .status(BatchItemResult.INVALID)
+                        .error(errors.get())
+                        .build();
+                continue;
+            }
+            // ids are assigned up front because bulk writes do not report generated ids back
+            if (movieReview.getId() == null) {
+                movieReview.setId(new ObjectId().toHexString());
+            }
+            movieReview.setVersion(0L);
+            movieReview.setCreatedAt(lastModified);
+            movieReview.setLastModified(lastModified);
+            validMovieReviews.add(movieReview);
+            validPositions.add(position);
+        }
+
+        return movieReviewRepository.insertUnordered(validMovieReviews)
+                .onErrorResume(ex -> Mono.just(IntStream.range(0, validMovieReviews.size()).boxed()
+                        .collect(Collectors.toMap(i -> i, i -> String.valueOf(ex.getMessage())))))
+                .flatMap(failures -> {
+                    List<MovieReview> insertedMovieReviews = new ArrayList<>(validMovieReviews.size());
+                    for (int i = 0; i < validMovieReviews.size(); i++) {
+                        final int position = validPositions.get(i);
+                        final MovieReview movieReview = validMovieReviews.get(i);
+                        final String failure = failures.get(i);
+                        results[position] = BatchItemResult.builder()
+                                .index(chunk.get(position).getT1())
+                                .status(failure == null ? BatchItemResult.CREATED : BatchItemResult.FAILED)
+                                .id(movieReview.getId())
+                                .error(failure)
+                                .build();
+                        if (failure == null) {
+                            insertedMovieReviews.add(movieReview);
+                        }
+                    }
+                    return movieReviewStatsRepository.recordAdded(insertedMovieReviews)
+                            .then(Mono.fromRunnable(() -> insertedMovieReviews.forEach(movieReview -> {
+                                reviewsByMovieCache.invalidate(movieReview.getMoveInfoId());
+                                reviewBroadcaster.publishLocal(ReviewEvent.of(ReviewEvent.Type.CREATED, movieReview));
+                            })));
+                })
+                .thenMany(Flux.defer(() -> Flux.fromArray(results)));
     }
 
     public Mono<ServerResponse> getAllReviews(ServerRequest request) {
         Optional<String> moveInfoIdOpt = request.queryParam("moveInfoId");
+        final int limit = resolvePageLimit(request, defaultPageLimit);
+        final Optional<String> afterOpt = request.queryParam("after");
+        final Optional<List<String>> fieldsOpt = resolveFields(request);
+        final Optional<Sort.Direction> ratingOrderOpt = resolveRatingOrder(request, moveInfoIdOpt, afterOpt);
+        final boolean ndjson = acceptsNdjson(request);
+
+        if (ratingOrderOpt.isPresent()) {
+            return conditionalOnMovie(request, moveInfoIdOpt.get(), ndjson, changeMarkerOpt ->
+                    getReviewsByRating(moveInfoIdOpt.get(), ratingOrderOpt.get(), limit, fieldsOpt, ndjson));
+        }
 
         if (moveInfoIdOpt.isPresent()) {
-            return getReviewByMoveInfoId(moveInfoIdOpt.get());
+            return conditionalOnMovie(request, moveInfoIdOpt.get(), ndjson, changeMarkerOpt ->
+                    getReviewByMoveInfoId(moveInfoIdOpt.get(), afterOpt, limit, fieldsOpt, ndjson,
+                            changeMarkerOpt.map(ChangeMarker::tag).orElse(null)));
         }
 
-        Flux<MovieReview> allMovieReviewFlux = movieReviewRepository.findAll();
-        return ServerResponse.ok().body(allMovieReviewFlux, MovieReview.class);
+        // one extra review is fetched to know whether a next page exists
+        final Pageable pageable = PageRequest.ofSize(limit + 1);
+        Flux<MovieReview> movieReviewPageFlux;
+        if (fieldsOpt.isPresent()) {
+            movieReviewPageFlux = movieReviewRepository.findPageWithFields(null, afterOpt.orElse(null), BY_ID, limit + 1, fieldsOpt.get());
+        } else {
+            movieReviewPageFlux = afterOpt
+                    .map(after -> movieReviewRepository.findByIdGreaterThanOrderByIdAsc(after, pageable))
+                    .orElseGet(() -> movieReviewRepository.findAllByOrderByIdAsc(pageable));
+        }
+        if (ndjson) {
+            return ndjsonResponse(movieReviewPageFlux.take(limit), fieldsOpt);
+        }
+        return pageResponse(movieReviewPageFlux.collectList(), limit, fieldsOpt);
     }
 
     public Mono<ServerResponse> updateReview(ServerRequest request) {
+        checkBodySize(request);
         final String id = request.pathVariable("id");
-        Mono<MovieReview> movieReviewFoundById = movieReviewRepository.findById(id).log()
-                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Movie Review Not found")));
+        final Long expectedVersion = ifMatchVersion(request);
+        final Instant lastModified = now();
 
-        return movieReviewFoundById
-                .flatMap(movieReview -> request.bodyToMono(MovieReview.class)
-                        .doOnNext(this::validateBody)
-                        .map(requestReview -> {
-                            movieReview.setComment(requestReview.getComment());
-                            movieReview.setRating(requestReview.getRating());
-                            return movieReview;
-                        })
-                        .flatMap(movieReviewRepository::save)
-                        .log()
-                        .flatMap(savedMovieReview -> ServerResponse.ok().bodyValue(savedMovieReview))
-                );
+        return request.bodyToMono(MovieReview.class)
+                .doOnNext(this::validateBody)
+                .flatMap(requestReview -> movieReviewRepository
+                        .updateCommentAndRating(id, requestReview.getComment(), requestReview.getRating(), expectedVersion,
+                                lastModified)
+                        .switchIfEmpty(notFoundOrPreconditionFailed(id, expectedVersion))
+                        .flatMap(previousMovieReview -> {
+                            MovieReview updatedMovieReview = MovieReview.builder()
+                                    .id(previousMovieReview.getId())
+                                    .moveInfoId(previousMovieReview.getMoveInfoId())
+                                    .comment(requestReview.getComment())
+                                    .rating(requestReview.getRating())
+                                    .version(previousMovieReview.getVersion() == null ? 1 : previousMovieReview.getVersion() + 1)
+                                    .createdAt(previousMovieReview.getCreatedAt())
+                                    .lastModified(lastModified)
+                                    .build();
+                            return movieReviewStatsRepository
+                                    .recordRatingChanged(previousMovieReview, updatedMovieReview.getRating())
+                                    .thenReturn(updatedMovieReview);
+                        }))
+                .doOnNext(updatedMovieReview -> reviewsByMovieCache.invalidate(updatedMovieReview.getMoveInfoId()))
+                .doOnNext(updatedMovieReview -> reviewBroadcaster.publishLocal(
+                        ReviewEvent.of(ReviewEvent.Type.UPDATED, updatedMovieReview)))
+                .flatMap(updatedMovieReview -> ServerResponse.ok()
+                        .headers(eTag(updatedMovieReview))
+                        .bodyValue(updatedMovieReview));
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest request) {
         final String id = request.pathVariable("id");
-        Mono<MovieReview> movieReviewFoundById = movieReviewRepository.findById(id).log()
-                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Movie Review Not found")));
+        final Long expectedVersion = ifMatchVersion(request);
 
-        return movieReviewFoundById
-                .flatMap(movieReview -> movieReviewRepository.deleteById(id))
+        return movieReviewRepository.findAndRemoveById(id, expectedVersion)
+                .switchIfEmpty(notFoundOrPreconditionFailed(id, expectedVersion))
+                .flatMap(movieReview -> movieReviewStatsRepository.recordDeleted(movieReview)
+                        .doOnSuccess(recorded -> {
+                            reviewsByMovieCache.invalidate(movieReview.getMoveInfoId());
+                            reviewBroadcaster.publishLocal(ReviewEvent.of(ReviewEvent.Type.DELETED, movieReview));
+                        }))
                 .then(ServerResponse.noContent().build());
     }
 
-    public Mono<ServerResponse> getReviewByMoveInfoId(String moveInfoId) {
-        Flux<MovieReview> movieReviewFlux = movieReviewRepository.findReviewsByMoveInfoId(moveInfoId).log()
+    /**
+     * Version expected by an {@code If-Match} header, null when the request is unconditional.
+     */
+    private Long ifMatchVersion(ServerRequest request) {
+        final String ifMatch = request.headers().firstHeader(HttpHeaders.IF_MATCH);
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(ifMatch.trim().replaceFirst("^W/", "").replace("\"", ""));
+        } catch (NumberFormatException ex) {
+            throw new ReviewPreconditionFailedException("Movie Review version does not match " + ifMatch, true);
+        }
+    }
+
+    // a conditional write that matched nothing is told apart from a missing review only on that rare path
+    private Mono<MovieReview> notFoundOrPreconditionFailed(String id, Long expectedVersion) {
+        if (expectedVersion == null) {
+            return Mono.error(new ReviewNotFoundException("Movie Review Not found"));
+        }
+
+        return movieReviewRepository.existsById(id)
+                .flatMap(exists -> Mono.error(exists
+                        ? new ReviewPreconditionFailedException("Movie Review version does not match " + expectedVersion, true)
+                        : new ReviewNotFoundException("Movie Review Not found")));
+    }
+
+    private static Consumer<HttpHeaders> eTag(MovieReview movieReview) {
+        return headers -> {
+            if (movieReview.getVersion() != null) {
+                headers.setETag("\"" + movieReview.getVersion() + "\"");
+            }
+        };
+    }
+
+    public Mono<ServerResponse> getReviewStats(ServerRequest request) {
+        final String moveInfoId = request.pathVariable("moveInfoId");
+
+        // the marker is on the stats document itself, there is nothing to save by reading it first
+        return movieReviewStatsRepository.findById(moveInfoId)
+                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Movie Review Stats Not found")))
+                .flatMap(movieReviewStats -> ChangeMarker.of(movieReviewStats)
+                        .map(changeMarker -> request.checkNotModified(changeMarker.lastModified(), changeMarker.eTag(false)))
+                        .orElse(Mono.empty())
+                        .switchIfEmpty(Mono.defer(() -> ServerResponse.ok().bodyValue(movieReviewStats))));
+    }
+
+    /**
+     * Rating of a movie over time: the hourly or daily rollups ({@code bucket=hour|day}, day by default) of the
+     * reviews created from {@code from} to {@code to}, excluded, in UTC. Buckets without reviews are left out.
+     * Only the rollups are read, so the cost depends on the number of buckets, not of reviews.
+     */
+    public Mono<ServerResponse> getReviewTrend(ServerRequest request) {
+        final String moveInfoId = request.pathVariable("moveInfoId");
+        final MovieReviewRollup.Bucket bucket = resolveBucket(request);
+        final Instant from = bucket.startOf(resolveInstant(request, "from"));
+        final Instant to = resolveInstant(request, "to");
+        if (!to.isAfter(from)) {
+            throw new ReviewDataException("to: must be after from");
+        }
+        if (bucket.count(from, to) > maxTrendBuckets) {
+            throw new ReviewDataException("to: must be within " + maxTrendBuckets + " buckets of from");
+        }
+
+        // the rollups of a movie change with its reviews, so they are validated by the same change marker
+        return conditionalOnMovie(request, moveInfoId, false, changeMarkerOpt -> ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(chunkedJsonEncoder.jsonArray(movieReviewRollupRepository
+                        .findByMoveInfoIdAndBucketAndStartGreaterThanEqualAndStartLessThanOrderByStartAsc(moveInfoId, bucket, from, to)
+                        .filter(movieReviewRollup -> movieReviewRollup.getCount() > 0))));
+    }
+
+    private static MovieReviewRollup.Bucket resolveBucket(ServerRequest request) {
+        final String bucketParam = request.queryParam("bucket").orElse("day");
+        return switch (bucketParam) {
+            case "hour" -> MovieReviewRollup.Bucket.HOUR;
+            case "day" -> MovieReviewRollup.Bucket.DAY;
+            default -> throw new ReviewDataException("bucket: must be hour or day");
+        };
+    }
+
+    /**
+     * @return the instant of an ISO-8601 instant, or the start of an ISO-8601 date in UTC
+     */
+    private static Instant resolveInstant(ServerRequest request, String name) {
+        final String param = request.queryParam(name).orElse("");
+        try {
+            return param.length() == 10 ? LocalDate.parse(param).atStartOfDay(ZoneOffset.UTC).toInstant() : Instant.parse(param);
+        } catch (DateTimeParseException ignored) {
+            // reported below as a bad request
+        }
+        throw new ReviewDataException(name + ": must be an ISO-8601 instant or date");
+    }
+
+    /**
+     * Validators of the lists and stats of a movie, taken from the change marker on its stats document.
+     *
+     * @param tag version and lastModified of the marker; a stats document removed with the last review of its
+     *            movie starts again at version 1, the timestamp keeps the tags of both apart
+     */
+    private record ChangeMarker(String tag, Instant lastModified) {
+
+        static Optional<ChangeMarker> of(MovieReviewStats movieReviewStats) {
+            // stats written before the marker existed have none until the next write to their movie
+            if (movieReviewStats.getLastModified() == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new ChangeMarker(movieReviewStats.getVersion() + "-" + movieReviewStats.getLastModified().toEpochMilli(),
+                    movieReviewStats.getLastModified()));
+        }
+
+        // weak, the body is equivalent but not byte for byte the same once compressed; NDJSON is another representation
+        String eTag(boolean ndjson) {
+            return "W/\"" + tag + (ndjson ? "-ndjson" : "") + "\"";
+        }
+    }
+
+    /**
+     * Answers a read of the reviews of a movie with a 304 when the client already has the version its
+     * {@code If-None-Match} or {@code If-Modified-Since} names, reading only the change marker of the movie.
+     * Otherwise the marker is sent as ETag and Last-Modified with the response; it is read before the reviews,
+     * so the reviews sent are never older than the validators sent with them.
+     */
+    private Mono<ServerResponse> conditionalOnMovie(ServerRequest request, String moveInfoId, boolean ndjson,
+                                                    Function<Optional<ChangeMarker>, Mono<ServerResponse>> response) {
+        return movieReviewStatsRepository.findChangeMarker(moveInfoId)
+                .map(ChangeMarker::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(changeMarkerOpt -> changeMarkerOpt
+                        // sets the validators on the exchange for the full response too
+                        .map(changeMarker -> request.checkNotModified(changeMarker.lastModified(), changeMarker.eTag(ndjson)))
+                        .orElse(Mono.empty())
+                        .switchIfEmpty(Mono.defer(() -> response.apply(changeMarkerOpt))));
+    }
+
+    private static Instant now() {
+        // Mongo keeps milliseconds, the review sent back must match the review stored
+        return Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    /**
+     * @param changeMarker tag of the change marker of the movie read before the reviews, null when it has none
+     */
+    public Mono<ServerResponse> getReviewByMoveInfoId(String moveInfoId, Optional<String> afterOpt, int limit,
+                                                      Optional<List<String>> fieldsOpt, boolean ndjson, String changeMarker) {
+        final Pageable pageable = PageRequest.ofSize(limit + 1);
+        if (afterOpt.isPresent()) {
+            Flux<MovieReview> movieReviewPageFlux = fieldsOpt
+                    .map(fields -> movieReviewRepository.findPageWithFields(moveInfoId, afterOpt.get(), BY_ID, limit + 1, fields))
+                    .orElseGet(() -> movieReviewRepository
+                            .findReviewsByMoveInfoIdAndIdGreaterThanOrderByIdAsc(moveInfoId, afterOpt.get(), pageable));
+            if (ndjson) {
+                return ndjsonResponse(movieReviewPageFlux.take(limit), fieldsOpt);
+            }
+            return pageResponse(movieReviewPageFlux.collectList(), limit, fieldsOpt);
+        }
+
+        // the first page of a movie is served from the cache, with or without field selection
+        Mono<List<MovieReview>> firstPageMono = reviewsByMovieCache.get(moveInfoId, limit, changeMarker,
+                        () -> movieReviewRepository.findReviewsByMoveInfoIdOrderByIdAsc(moveInfoId, pageable).collectList())
+                .filter(movieReviews -> !movieReviews.isEmpty())
                 .switchIfEmpty(Mono.error(new ReviewNotFoundException("Movie Review Not found")));
 
-        return ServerResponse.ok().body(movieReviewFlux, MovieReview.class);
+        if (ndjson) {
+            return firstPageMono.flatMap(movieReviews -> ndjsonResponse(Flux.fromIterable(movieReviews).take(limit), fieldsOpt));
+        }
+        return pageResponse(firstPageMono, limit, fieldsOpt);
+    }
+
+    /**
+     * The first reviews of several movies at once, for pages that show many movies: one Mongo command instead of
+     * one request and query per movie. Answers with one group per movie that has reviews, in the order asked for,
+     * as a JSON array or one group per NDJSON line; groups are written as they are read, so no more than one
+     * movie's reviews are held at a time.
+     */
+    public Mono<ServerResponse> getReviewsOfMovies(ServerRequest request) {
+        final Optional<List<String>> fieldsOpt = resolveFields(request);
+        final boolean ndjson = acceptsNdjson(request);
+
+        return request.bodyToMono(ReviewsByMoviesRequest.class)
+                .switchIfEmpty(Mono.error(() -> new ReviewDataException("moveInfoIds: must list between 1 and "
+                        + maxMoviesPerLookup + " movies")))
+                .flatMap(reviewsByMoviesRequest -> {
+                    final List<String> moveInfoIds = resolveMoveInfoIds(reviewsByMoviesRequest);
+                    final int limit = reviewsByMoviesRequest.getLimit() == null
+                            ? defaultPageLimit
+                            : checkPageLimit(reviewsByMoviesRequest.getLimit());
+
+                    Flux<MovieReviewGroup> movieReviewGroupFlux = movieReviewRepository
+                            .findFirstReviewsOfMovies(moveInfoIds, limit, fieldsOpt.orElse(null))
+                            .bufferUntilChanged(MovieReview::getMoveInfoId)
+                            .map(movieReviews -> MovieReviewGroup.builder()
+                                    .moveInfoId(movieReviews.get(0).getMoveInfoId())
+                                    .reviews(fieldsOpt.isEmpty() ? movieReviews : movieReviews.stream()
+                                            .map(movieReview -> selectFields(movieReview, fieldsOpt.get()))
+                                            .toList())
+                                    .build());
+                    if (ndjson) {
+                        return ServerResponse.ok()
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .body(chunkedJsonEncoder.ndjson(movieReviewGroupFlux));
+                    }
+                    return ServerResponse.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(chunkedJsonEncoder.jsonArray(movieReviewGroupFlux));
+                });
     }
 
-    private void validateBody(MovieReview movieReview) {
-        Set<ConstraintViolation<MovieReview>> constraintViolations = validator.validate(movieReview);
+    /**
+     * @return the movies asked for, without blanks or repeats, in the order asked for
+     */
+    private List<String> resolveMoveInfoIds(ReviewsByMoviesRequest reviewsByMoviesRequest) {
+        Set<String> moveInfoIds = new LinkedHashSet<>();
+        if (reviewsByMoviesRequest.getMoveInfoIds() != null) {
+            for (String moveInfoId : reviewsByMoviesRequest.getMoveInfoIds()) {
+                if (moveInfoId != null && !moveInfoId.isBlank()) {
+                    moveInfoIds.add(moveInfoId);
+                }
+            }
+        }
+        if (moveInfoIds.isEmpty() || moveInfoIds.size() > maxMoviesPerLookup) {
+            throw new ReviewDataException("moveInfoIds: must list between 1 and " + maxMoviesPerLookup + " movies");
+        }
+        return List.copyOf(moveInfoIds);
+    }
+
+    /**
+     * Reviews whose comment matches {@code q}, best match first, of one movie when {@code moveInfoId} is given.
+     * Pages are chained like the review list: {@value #NEXT_CURSOR_HEADER} is the {@code after} of the next page.
+     */
+    public Mono<ServerResponse> searchReviews(ServerRequest request) {
+        final String text = request.queryParam("q")
+                .map(String::trim)
+                .filter(q -> !q.isEmpty())
+                .orElseThrow(() -> new ReviewDataException("q: search text must not be blank"));
+        final int limit = resolvePageLimit(request, defaultPageLimit);
+        final String moveInfoId = request.queryParam("moveInfoId").orElse(null);
+        final SearchCursor after = request.queryParam("after").map(SearchCursor::parse).orElse(null);
+
+        Flux<ReviewSearchHit> hitFlux = after != null
+                ? movieReviewRepository.searchComments(text, moveInfoId, after.score(), after.id(), limit + 1)
+                : movieReviewRepository.searchComments(text, moveInfoId, null, null, limit + 1);
+        if (acceptsNdjson(request)) {
+            return ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(chunkedJsonEncoder.ndjson(hitFlux.take(limit)));
+        }
+        return hitFlux.collectList()
+                .flatMap(hits -> {
+                    ServerResponse.BodyBuilder responseBuilder = ServerResponse.ok();
+                    List<ReviewSearchHit> page = hits;
+                    if (hits.size() > limit) {
+                        page = hits.subList(0, limit);
+                        responseBuilder.header(NEXT_CURSOR_HEADER, page.get(limit - 1).cursor());
+                    }
+                    return responseBuilder
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(chunkedJsonEncoder.jsonArray(Flux.fromIterable(page)));
+                });
+    }
+
+    private record SearchCursor(double score, String id) {
+
+        static SearchCursor parse(String cursor) {
+            final int separator = cursor.indexOf('_');
+            if (separator > 0 && separator < cursor.length() - 1) {
+                try {
+                    return new SearchCursor(Double.parseDouble(cursor.substring(0, separator)), cursor.substring(separator + 1));
+                } catch (NumberFormatException ignored) {
+                    // reported below as a bad request
+                }
+            }
+            throw new ReviewDataException("after: not a search cursor");
+        }
+    }
+
+    /**
+     * The highest rated reviews of a movie, {@code reviews.top.default-limit} unless a limit is given.
+     */
+    public Mono<ServerResponse> getTopReviews(ServerRequest request) {
+        final String moveInfoId = request.pathVariable("moveInfoId");
+        final int limit = resolvePageLimit(request, defaultTopLimit);
+        final Optional<List<String>> fieldsOpt = resolveFields(request);
+        final boolean ndjson = acceptsNdjson(request);
+
+        return conditionalOnMovie(request, moveInfoId, ndjson, changeMarkerOpt ->
+                getReviewsByRating(moveInfoId, Sort.Direction.DESC, limit, fieldsOpt, ndjson));
+    }
 
-        if (constraintViolations.size() > 0) {
-            final String errors = constraintViolations.stream()
-                    .map(ConstraintViolation::getMessage)
-                    .sorted()
-                    .collect(Collectors.joining(", "));
+    private Mono<ServerResponse> getReviewsByRating(String moveInfoId, Sort.Direction ratingOrder, int limit,
+                                                    Optional<List<String>> fieldsOpt, boolean ndjson) {
+        // ties are broken on the id in the direction that lets Mongo walk moveInfoId_rating_id without sorting
+        final Sort byRating = Sort.by(ratingOrder, "rating")
+                .and(Sort.by(ratingOrder == Sort.Direction.DESC ? Sort.Direction.ASC : Sort.Direction.DESC, "id"));
+
+        Flux<MovieReview> movieReviewFlux = fieldsOpt
+                .map(fields -> movieReviewRepository.findPageWithFields(moveInfoId, null, byRating, limit, fields))
+                .orElseGet(() -> movieReviewRepository.findReviewsByMoveInfoId(moveInfoId, PageRequest.of(0, limit, byRating)));
+
+        // without a cursor to compute the reviews are streamed as Mongo returns them; a movie without reviews
+        // fails before the first byte is written, so it is still answered with a 404
+        movieReviewFlux = movieReviewFlux
+                .switchIfEmpty(Flux.error(() -> new ReviewNotFoundException("Movie Review Not found")));
+        if (ndjson) {
+            return ndjsonResponse(movieReviewFlux, fieldsOpt);
+        }
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(chunkedJsonEncoder.jsonArray(selectFields(movieReviewFlux, fieldsOpt)));
+    }
+
+    private Mono<ServerResponse> pageResponse(Mono<List<MovieReview>> movieReviewPageMono, int limit,
+                                              Optional<List<String>> fieldsOpt) {
+        return movieReviewPageMono
+                .flatMap(movieReviews -> {
+                    ServerResponse.BodyBuilder responseBuilder = ServerResponse.ok();
+                    List<MovieReview> page = movieReviews;
+                    if (movieReviews.size() > limit) {
+                        page = movieReviews.subList(0, limit);
+                        responseBuilder.header(NEXT_CURSOR_HEADER, page.get(limit - 1).getId());
+                    }
+                    return responseBuilder
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(chunkedJsonEncoder.jsonArray(selectFields(Flux.fromIterable(page), fieldsOpt)));
+                });
+    }
+
+    /**
+     * One review per line, written as they are read. There is no {@value #NEXT_CURSOR_HEADER} header: the cursor
+     * of the next page is the id of the last line, and a page shorter than its limit is the last one.
+     */
+    private Mono<ServerResponse> ndjsonResponse(Flux<MovieReview> movieReviewFlux, Optional<List<String>> fieldsOpt) {
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(chunkedJsonEncoder.ndjson(selectFields(movieReviewFlux, fieldsOpt)));
+    }
+
+    private static boolean acceptsNdjson(ServerRequest request) {
+        return request.headers().accept().stream().anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+    }
+
+    /**
+     * @return the fields selected with {@code fields=}, in {@link #SELECTABLE_FIELDS} order, empty when all are wanted
+     */
+    private static Optional<List<String>> resolveFields(ServerRequest request) {
+        final String fieldsParam = request.queryParam("fields").orElse(null);
+        if (fieldsParam == null || fieldsParam.isBlank()) {
+            return Optional.empty();
+        }
+
+        Set<String> requestedFields = Arrays.stream(fieldsParam.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toSet());
+        for (String field : requestedFields) {
+            if (!SELECTABLE_FIELDS.contains(field)) {
+                throw new ReviewDataException("fields: unknown field " + field + ", select from "
+                        + String.join(", ", SELECTABLE_FIELDS), true);
+            }
+        }
+        return Optional.of(SELECTABLE_FIELDS.stream().filter(requestedFields::contains).toList());
+    }
+
+    private static Flux<?> selectFields(Flux<MovieReview> movieReviewFlux, Optional<List<String>> fieldsOpt) {
+        if (fieldsOpt.isEmpty()) {
+            return movieReviewFlux;
+        }
+        final List<String> fields = fieldsOpt.get();
+        return movieReviewFlux.map(movieReview -> selectFields(movieReview, fields));
+    }
+
+    private static Map<String, Object> selectFields(MovieReview movieReview, List<String> fields) {
+        Map<String, Object> partialMovieReview = new LinkedHashMap<>();
+        for (String field : fields) {
+            switch (field) {
+                case "id" -> partialMovieReview.put(field, movieReview.getId());
+                case "moveInfoId" -> partialMovieReview.put(field, movieReview.getMoveInfoId());
+                case "comment" -> partialMovieReview.put(field, movieReview.getComment());
+                case "rating" -> partialMovieReview.put(field, movieReview.getRating());
+                case "version" -> partialMovieReview.put(field, movieReview.getVersion());
+                default -> throw new IllegalStateException("Unexpected field " + field);
+            }
+        }
+        return partialMovieReview;
+    }
+
+    /**
+     * @return the rating order asked for with {@code sort=rating[,asc|desc]}, empty for the default id order
+     */
+    private static Optional<Sort.Direction> resolveRatingOrder(ServerRequest request, Optional<String> moveInfoIdOpt,
+                                                               Optional<String> afterOpt) {
+        final String sortParam = request.queryParam("sort").orElse(null);
+        if (sortParam == null || sortParam.equals("id") || sortParam.equals("id,asc")) {
+            return Optional.empty();
+        }
+
+        final Sort.Direction ratingOrder = switch (sortParam) {
+            case "rating", "rating,asc" -> Sort.Direction.ASC;
+            case "rating,desc" -> Sort.Direction.DESC;
+            default -> throw new ReviewDataException("sort: must be id, rating, rating,asc or rating,desc");
+        };
+        if (moveInfoIdOpt.isEmpty()) {
+            throw new ReviewDataException("sort: sorting by rating needs a moveInfoId");
+        }
+        if (afterOpt.isPresent()) {
+            throw new ReviewDataException("sort: after cannot be combined with sorting by rating");
+        }
+        return Optional.of(ratingOrder);
+    }
+
+    private int resolvePageLimit(ServerRequest request, int defaultLimit) {
+        final String limitParam = request.queryParam("limit").orElse(null);
+        if (limitParam == null) {
+            return defaultLimit;
+        }
+
+        try {
+            return checkPageLimit(Integer.parseInt(limitParam));
+        } catch (NumberFormatException ignored) {
+            // reported below as a bad request
+        }
+        throw pageLimitException();
+    }
+
+    private int checkPageLimit(int limit) {
+        if (limit >= 1 && limit <= maxPageLimit) {
+            return limit;
+        }
+        throw pageLimitException();
+    }
+
+    private ReviewDataException pageLimitException() {
+        return new ReviewDataException("page.limit: limit must be a number between 1 and " + maxPageLimit);
+    }
+
+    private void validateBody(MovieReview movieReview) {
+        findValidationErrors(movieReview).ifPresent(errors -> {
             throw new ReviewDataException(errors);
+        });
+    }
+
+    Optional<String> findValidationErrors(MovieReview movieReview) {
+        return movieReviewValidator.findErrors(movieReview);
+    }
+
+    /**
+     * Refuses a single review announced larger than any valid review can be, before its body is read.
+     * Bodies sent without a Content-Length are bounded by the codec and validated once decoded.
+     */
+    private void checkBodySize(ServerRequest request) {
+        if (request.headers().contentLength().orElse(0) > movieReviewValidator.getMaxBodyBytes()) {
+            throw new ReviewPayloadTooLargeException("review: body must be at most "
+                    + movieReviewValidator.getMaxBodyBytes() + " bytes");
         }
     }
 
     public Mono<ServerResponse> getReviewsStream(ServerRequest request) {
+        final String moveInfoId = request.queryParam("moveInfoId").orElse(null);
+
+        if (request.headers().accept().stream().anyMatch(MediaType.TEXT_EVENT_STREAM::includes)) {
+            Flux<ReviewEvent> reviewEventFlux = resumedReviewEvents(request, moveInfoId)
+                    .orElseGet(() -> reviewBroadcaster.subscribe(moveInfoId));
+            // heartbeats are SSE comments, they keep idle connections open through proxies and end with the stream
+            Flux<ServerSentEvent<MovieReview>> eventFlux = reviewEventFlux.publish(reviewEvents -> Flux.merge(
+                    reviewEvents.map(reviewEvent -> ServerSentEvent.builder(reviewEvent.getReview())
+                            .id(reviewEvent.getId())
+                            .event(reviewEvent.getType().name().toLowerCase())
+                            .build()),
+                    reviewBroadcaster.heartbeats()
+                            .map(tick -> ServerSentEvent.<MovieReview>builder().comment("keepalive").build())
+                            .takeUntilOther(reviewEvents.then())
+            ));
+            return ServerResponse.ok()
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(eventFlux, new ParameterizedTypeReference<ServerSentEvent<MovieReview>>() {});
+        }
+
+        // NDJSON lines carry no event type, deletions are only streamed as SSE
+        Flux<MovieReview> movieReviewFlux = reviewBroadcaster.subscribe(moveInfoId)
+                .filter(reviewEvent -> reviewEvent.getType() != ReviewEvent.Type.DELETED)
+                .map(ReviewEvent::getReview);
         return ServerResponse.ok()
                 .contentType(MediaType.APPLICATION_NDJSON)
-                .body(sink.asFlux(), MovieReview.class)
-                .log();
+                .body(movieReviewFlux, MovieReview.class);
+    }
+
+    private Optional<Flux<ReviewEvent>> resumedReviewEvents(ServerRequest request, String moveInfoId) {
+        final String lastEventId = request.headers().firstHeader("Last-Event-ID");
+        ChangeStreamReviewPublisher publisher = changeStreamReviewPublisher.getIfAvailable();
+        if (lastEventId == null || publisher == null) {
+            return Optional.empty();
+        }
+        if (!ChangeStreamReviewPublisher.isEventId(lastEventId)) {
+            // not an id this service sent, the client joins the live stream as if it had none
+            return Optional.empty();
+        }
+
+        return Optional.of(reviewBroadcaster.subscribe(publisher.resumeAfter(lastEventId, reviewBroadcaster.sharedEvents()),
+                moveInfoId));
     }
 }
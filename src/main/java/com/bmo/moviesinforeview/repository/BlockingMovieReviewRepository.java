@@ -0,0 +1,28 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * {@link MovieReviewRepository} on the blocking driver, for the {@code blocking} profile only. Methods have the
+ * names and parameters of their reactive counterparts, which is how {@link BlockingRepositoryAdapter} finds them.
+ */
+@Repository
+public interface BlockingMovieReviewRepository extends MongoRepository<MovieReview, String>,
+        BlockingMovieReviewRepositoryCustom {
+    List<MovieReview> findReviewsByMoveInfoId(String moveInfoId);
+
+    List<MovieReview> findAllByOrderByIdAsc(Pageable pageable);
+
+    List<MovieReview> findByIdGreaterThanOrderByIdAsc(String id, Pageable pageable);
+
+    List<MovieReview> findReviewsByMoveInfoIdOrderByIdAsc(String moveInfoId, Pageable pageable);
+
+    List<MovieReview> findReviewsByMoveInfoIdAndIdGreaterThanOrderByIdAsc(String moveInfoId, String id, Pageable pageable);
+
+    List<MovieReview> findReviewsByMoveInfoId(String moveInfoId, Pageable pageable);
+}
@@ -0,0 +1,27 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.ReviewSearchHit;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocking counterpart of {@link MovieReviewRepositoryCustom}, see there for what each method does.
+ */
+public interface BlockingMovieReviewRepositoryCustom {
+    Map<Integer, String> insertUnordered(List<MovieReview> movieReviews);
+
+    MovieReview updateCommentAndRating(String id, String comment, double rating, Long expectedVersion, Instant lastModified);
+
+    MovieReview findAndRemoveById(String id, Long expectedVersion);
+
+    List<MovieReview> findPageWithFields(String moveInfoId, String after, Sort sort, int limit, Collection<String> fields);
+
+    List<ReviewSearchHit> searchComments(String text, String moveInfoId, Double afterScore, String afterId, int limit);
+
+    List<MovieReview> findFirstReviewsOfMovies(List<String> moveInfoIds, int limitPerMovie, Collection<String> fields);
+}
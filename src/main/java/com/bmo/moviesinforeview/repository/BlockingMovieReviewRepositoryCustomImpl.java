@@ -0,0 +1,76 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.ReviewSearchHit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.bmo.moviesinforeview.repository.MovieReviewRepositoryCustomImpl.byIdAndVersion;
+import static com.bmo.moviesinforeview.repository.MovieReviewRepositoryCustomImpl.commentAndRatingUpdate;
+import static com.bmo.moviesinforeview.repository.MovieReviewRepositoryCustomImpl.firstReviewsOfMoviesAggregation;
+import static com.bmo.moviesinforeview.repository.MovieReviewRepositoryCustomImpl.pageWithFieldsQuery;
+import static com.bmo.moviesinforeview.repository.MovieReviewRepositoryCustomImpl.searchAggregation;
+import static com.bmo.moviesinforeview.repository.MovieReviewRepositoryCustomImpl.writeErrors;
+
+public class BlockingMovieReviewRepositoryCustomImpl implements BlockingMovieReviewRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public BlockingMovieReviewRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Map<Integer, String> insertUnordered(List<MovieReview> movieReviews) {
+        if (movieReviews.isEmpty()) {
+            return Map.of();
+        }
+
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MovieReview.class)
+                    .insert(movieReviews)
+                    .execute();
+            return Map.of();
+        } catch (BulkOperationException ex) {
+            // the blocking template translates the driver's MongoBulkWriteException
+            return writeErrors(ex.getErrors());
+        }
+    }
+
+    @Override
+    public MovieReview updateCommentAndRating(String id, String comment, double rating, Long expectedVersion,
+                                              Instant lastModified) {
+        return mongoTemplate.findAndModify(byIdAndVersion(id, expectedVersion), commentAndRatingUpdate(comment, rating, lastModified),
+                FindAndModifyOptions.options().returnNew(false), MovieReview.class);
+    }
+
+    @Override
+    public MovieReview findAndRemoveById(String id, Long expectedVersion) {
+        return mongoTemplate.findAndRemove(byIdAndVersion(id, expectedVersion), MovieReview.class);
+    }
+
+    @Override
+    public List<MovieReview> findPageWithFields(String moveInfoId, String after, Sort sort, int limit, Collection<String> fields) {
+        return mongoTemplate.find(pageWithFieldsQuery(moveInfoId, after, sort, limit, fields), MovieReview.class);
+    }
+
+    @Override
+    public List<ReviewSearchHit> searchComments(String text, String moveInfoId, Double afterScore, String afterId, int limit) {
+        return mongoTemplate.aggregate(searchAggregation(text, moveInfoId, afterScore, afterId, limit),
+                MovieReview.class, ReviewSearchHit.class).getMappedResults();
+    }
+
+    @Override
+    public List<MovieReview> findFirstReviewsOfMovies(List<String> moveInfoIds, int limitPerMovie, Collection<String> fields) {
+        return mongoTemplate.aggregate(firstReviewsOfMoviesAggregation(moveInfoIds, limitPerMovie, fields),
+                MovieReview.class, MovieReview.class).getMappedResults();
+    }
+}
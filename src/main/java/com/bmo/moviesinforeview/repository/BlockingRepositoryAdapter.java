@@ -0,0 +1,86 @@
+package com.bmo.moviesinforeview.repository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Implements a reactive repository interface with a blocking repository: every call goes to the method of the
+ * blocking repository with the same name and parameter types, runs on the given scheduler, and its result is
+ * handed back as a {@link Mono} or, for lists, a {@link Flux}. Methods taking a {@code Publisher} have no
+ * blocking counterpart and fail.
+ */
+public final class BlockingRepositoryAdapter implements InvocationHandler {
+
+    private final Class<?> blockingInterface;
+    private final Object blockingRepository;
+    private final Scheduler scheduler;
+    private final Map<Method, Method> blockingMethods = new ConcurrentHashMap<>();
+
+    private BlockingRepositoryAdapter(Class<?> blockingInterface, Object blockingRepository, Scheduler scheduler) {
+        this.blockingInterface = blockingInterface;
+        this.blockingRepository = blockingRepository;
+        this.scheduler = scheduler;
+    }
+
+    public static <R, B> R create(Class<R> reactiveInterface, Class<B> blockingInterface, B blockingRepository,
+                                  Scheduler scheduler) {
+        return reactiveInterface.cast(Proxy.newProxyInstance(reactiveInterface.getClassLoader(),
+                new Class<?>[]{reactiveInterface},
+                new BlockingRepositoryAdapter(blockingInterface, blockingRepository, scheduler)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                default -> "Blocking " + blockingInterface.getSimpleName();
+            };
+        }
+
+        Method blockingMethod = blockingMethods.computeIfAbsent(method, this::blockingMethodOf);
+        Callable<Object> call = () -> invokeBlocking(blockingMethod, args);
+        if (Flux.class.isAssignableFrom(method.getReturnType())) {
+            return Mono.fromCallable(call)
+                    .subscribeOn(scheduler)
+                    .flatMapIterable(result -> (Iterable<?>) result);
+        }
+        if (Mono.class.isAssignableFrom(method.getReturnType())) {
+            // a null or void result completes empty
+            return Mono.fromCallable(call)
+                    .subscribeOn(scheduler)
+                    .flatMap(result -> result instanceof Optional<?> optional ? Mono.justOrEmpty(optional) : Mono.just(result));
+        }
+        throw new UnsupportedOperationException(method + " does not return a Mono or a Flux");
+    }
+
+    private Method blockingMethodOf(Method method) {
+        try {
+            return blockingInterface.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException(blockingInterface.getSimpleName() + " has no counterpart of " + method);
+        }
+    }
+
+    private Object invokeBlocking(Method blockingMethod, Object[] args) throws Exception {
+        try {
+            return blockingMethod.invoke(blockingRepository, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
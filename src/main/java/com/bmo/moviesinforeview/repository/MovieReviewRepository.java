@@ -1,11 +1,25 @@
 package com.bmo.moviesinforeview.repository;
 
 import com.bmo.moviesinforeview.domain.MovieReview;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
 @Repository
-public interface MovieReviewRepository extends ReactiveMongoRepository<MovieReview, String> {
+public interface MovieReviewRepository extends ReactiveMongoRepository<MovieReview, String>,
+        MovieReviewRepositoryCustom {
     Flux<MovieReview> findReviewsByMoveInfoId(String moveInfoId);
+
+    // keyset pagination on _id: the cursor is the id of the last review of the previous page
+    Flux<MovieReview> findAllByOrderByIdAsc(Pageable pageable);
+
+    Flux<MovieReview> findByIdGreaterThanOrderByIdAsc(String id, Pageable pageable);
+
+    Flux<MovieReview> findReviewsByMoveInfoIdOrderByIdAsc(String moveInfoId, Pageable pageable);
+
+    Flux<MovieReview> findReviewsByMoveInfoIdAndIdGreaterThanOrderByIdAsc(String moveInfoId, String id, Pageable pageable);
+
+    // sorted and limited by the pageable, top-N by rating reads only N reviews off the moveInfoId_rating_id index
+    Flux<MovieReview> findReviewsByMoveInfoId(String moveInfoId, Pageable pageable);
 }
@@ -0,0 +1,61 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.ReviewSearchHit;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface MovieReviewRepositoryCustom {
+    /**
+     * Inserts the reviews with a single unordered bulk write, so one bad review does not stop the others.
+     *
+     * @return the error message of every review that could not be inserted, keyed by its position in the list
+     */
+    Mono<Map<Integer, String>> insertUnordered(List<MovieReview> movieReviews);
+
+    /**
+     * Sets comment, rating and lastModified and bumps the version with a single findAndModify.
+     *
+     * @param expectedVersion when not null, the review is only updated while it still has this version
+     * @return the review as it was before the update, empty when no review matched
+     */
+    Mono<MovieReview> updateCommentAndRating(String id, String comment, double rating, Long expectedVersion, Instant lastModified);
+
+    /**
+     * Deletes the review with a single findAndRemove.
+     *
+     * @param expectedVersion when not null, the review is only deleted while it still has this version
+     * @return the deleted review, empty when no review matched
+     */
+    Mono<MovieReview> findAndRemoveById(String id, Long expectedVersion);
+
+    /**
+     * Page of reviews, reading only the given fields from Mongo; the id is always read.
+     *
+     * @param moveInfoId when not null, only the reviews of that movie
+     * @param after      when not null, only the reviews with a greater id
+     */
+    Flux<MovieReview> findPageWithFields(String moveInfoId, String after, Sort sort, int limit, Collection<String> fields);
+
+    /**
+     * Reviews whose comment matches the text, best match first, through the text index on the comment.
+     *
+     * @param moveInfoId when not null, only the reviews of that movie
+     * @param afterScore with {@code afterId}, when not null, only the hits ranked after that one
+     */
+    Flux<ReviewSearchHit> searchComments(String text, String moveInfoId, Double afterScore, String afterId, int limit);
+
+    /**
+     * The first {@code limitPerMovie} reviews of each movie in id order, with a single command; the reviews of a
+     * movie come together, movies in the order given.
+     *
+     * @param fields when not null, only these fields are read; the id and moveInfoId are always read
+     */
+    Flux<MovieReview> findFirstReviewsOfMovies(List<String> moveInfoIds, int limitPerMovie, Collection<String> fields);
+}
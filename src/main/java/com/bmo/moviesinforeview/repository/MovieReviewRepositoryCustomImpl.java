@@ -0,0 +1,181 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.ReviewSearchHit;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class MovieReviewRepositoryCustomImpl implements MovieReviewRepositoryCustom {
+
+    // $unionWith names the collection, the sub-pipelines are not mapped against the entity
+    private static final String MOVIE_REVIEW_COLLECTION = "movieReview";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieReviewRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertUnordered(List<MovieReview> movieReviews) {
+        if (movieReviews.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+
+        return reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MovieReview.class)
+                .insert(movieReviews)
+                .execute()
+                .map(bulkWriteResult -> Map.<Integer, String>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(writeErrors(ex.getWriteErrors())));
+    }
+
+    @Override
+    public Mono<MovieReview> updateCommentAndRating(String id, String comment, double rating, Long expectedVersion,
+                                                    Instant lastModified) {
+        return reactiveMongoTemplate.findAndModify(byIdAndVersion(id, expectedVersion), commentAndRatingUpdate(comment, rating, lastModified),
+                FindAndModifyOptions.options().returnNew(false), MovieReview.class);
+    }
+
+    @Override
+    public Mono<MovieReview> findAndRemoveById(String id, Long expectedVersion) {
+        return reactiveMongoTemplate.findAndRemove(byIdAndVersion(id, expectedVersion), MovieReview.class);
+    }
+
+    @Override
+    public Flux<MovieReview> findPageWithFields(String moveInfoId, String after, Sort sort, int limit, Collection<String> fields) {
+        return reactiveMongoTemplate.find(pageWithFieldsQuery(moveInfoId, after, sort, limit, fields), MovieReview.class);
+    }
+
+    @Override
+    public Flux<ReviewSearchHit> searchComments(String text, String moveInfoId, Double afterScore, String afterId, int limit) {
+        return reactiveMongoTemplate.aggregate(searchAggregation(text, moveInfoId, afterScore, afterId, limit),
+                MovieReview.class, ReviewSearchHit.class);
+    }
+
+    @Override
+    public Flux<MovieReview> findFirstReviewsOfMovies(List<String> moveInfoIds, int limitPerMovie, Collection<String> fields) {
+        if (moveInfoIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return reactiveMongoTemplate.aggregate(firstReviewsOfMoviesAggregation(moveInfoIds, limitPerMovie, fields),
+                MovieReview.class, MovieReview.class);
+    }
+
+    // the queries are shared with BlockingMovieReviewRepositoryCustomImpl, so both execution modes send the same commands
+
+    static Map<Integer, String> writeErrors(List<BulkWriteError> bulkWriteErrors) {
+        return bulkWriteErrors.stream()
+                .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage));
+    }
+
+    static Update commentAndRatingUpdate(String comment, double rating, Instant lastModified) {
+        return new Update()
+                .set("comment", comment)
+                .set("rating", rating)
+                .set("lastModified", lastModified)
+                .inc("version", 1);
+    }
+
+    static Query pageWithFieldsQuery(String moveInfoId, String after, Sort sort, int limit, Collection<String> fields) {
+        Query query = new Query()
+                .with(sort)
+                .limit(limit);
+        if (moveInfoId != null) {
+            query.addCriteria(where("moveInfoId").is(moveInfoId));
+        }
+        if (after != null) {
+            query.addCriteria(where("id").gt(after));
+        }
+        query.fields().include(fields.toArray(String[]::new));
+        return query;
+    }
+
+    /**
+     * $text must be the first stage, so the text index bounds the work to the matching reviews; the score is
+     * only known after it, which is why the keyset condition is a later $match rather than part of the query.
+     */
+    static Aggregation searchAggregation(String text, String moveInfoId, Double afterScore, String afterId, int limit) {
+        Document match = TextCriteria.forDefaultLanguage().matching(text).getCriteriaObject();
+        if (moveInfoId != null) {
+            match.append("moveInfoId", moveInfoId);
+        }
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(context -> new Document("$match", match));
+        operations.add(context -> new Document("$addFields", new Document("score", new Document("$meta", "textScore"))));
+        if (afterScore != null && afterId != null) {
+            Object id = ObjectId.isValid(afterId) ? new ObjectId(afterId) : afterId;
+            operations.add(context -> new Document("$match", new Document("$or", List.of(
+                    new Document("score", new Document("$lt", afterScore)),
+                    new Document("score", afterScore).append("_id", new Document("$gt", id))))));
+        }
+        operations.add(context -> new Document("$sort", new Document("score", -1).append("_id", 1)));
+        operations.add(Aggregation.limit(limit));
+        return Aggregation.newAggregation(operations);
+    }
+
+    /**
+     * A plain {@code $in} cannot stop after N reviews of each movie, it would read every review of a popular movie.
+     * Each movie is a branch of its own instead, a bounded walk of moveInfoId_id, and the branches are chained
+     * with {@code $unionWith} so the whole lookup is still one round trip.
+     */
+    static Aggregation firstReviewsOfMoviesAggregation(List<String> moveInfoIds, int limitPerMovie, Collection<String> fields) {
+        List<AggregationOperation> operations = new ArrayList<>();
+        for (Document stage : firstReviewsOfMovie(moveInfoIds.get(0), limitPerMovie, fields)) {
+            operations.add(context -> stage);
+        }
+        for (String moveInfoId : moveInfoIds.subList(1, moveInfoIds.size())) {
+            Document unionWith = new Document("$unionWith", new Document("coll", MOVIE_REVIEW_COLLECTION)
+                    .append("pipeline", firstReviewsOfMovie(moveInfoId, limitPerMovie, fields)));
+            operations.add(context -> unionWith);
+        }
+        return Aggregation.newAggregation(operations);
+    }
+
+    private static List<Document> firstReviewsOfMovie(String moveInfoId, int limitPerMovie, Collection<String> fields) {
+        List<Document> stages = new ArrayList<>(4);
+        stages.add(new Document("$match", new Document("moveInfoId", moveInfoId)));
+        stages.add(new Document("$sort", new Document("_id", 1)));
+        stages.add(new Document("$limit", limitPerMovie));
+        if (fields != null) {
+            Document projection = new Document("moveInfoId", 1);
+            for (String field : fields) {
+                if (!field.equals("id")) {
+                    projection.append(field, 1);
+                }
+            }
+            stages.add(new Document("$project", projection));
+        }
+        return stages;
+    }
+
+    static Query byIdAndVersion(String id, Long expectedVersion) {
+        Query query = Query.query(where("_id").is(id));
+        if (expectedVersion != null) {
+            query.addCriteria(where("version").is(expectedVersion));
+        }
+        return query;
+    }
+}
@@ -0,0 +1,18 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+
+/**
+ * Reads the rollups; they are written by {@link MovieReviewStatsRepositoryCustom} along with the stats.
+ */
+@Repository
+public interface MovieReviewRollupRepository extends ReactiveMongoRepository<MovieReviewRollup, String> {
+    // a range of the moveInfoId_bucket_start index
+    Flux<MovieReviewRollup> findByMoveInfoIdAndBucketAndStartGreaterThanEqualAndStartLessThanOrderByStartAsc(
+            String moveInfoId, MovieReviewRollup.Bucket bucket, Instant from, Instant to);
+}
@@ -0,0 +1,10 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MovieReviewStatsRepository extends ReactiveMongoRepository<MovieReviewStats, String>,
+        MovieReviewStatsRepositoryCustom {
+}
@@ -0,0 +1,43 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Incremental maintenance of the per-movie rating aggregates. Every write is a single atomic update on the
+ * stats document of the movie, so reads never have to aggregate the reviews. The hourly and daily
+ * {@link com.bmo.moviesinforeview.domain.MovieReviewRollup rollups} of the movie are updated along with it, with
+ * one bulk write next to the stats update.
+ */
+public interface MovieReviewStatsRepositoryCustom {
+    Mono<Void> recordAdded(MovieReview movieReview);
+
+    /**
+     * Folds the reviews into one update per movie and applies them in a single unordered bulk write.
+     */
+    Mono<Void> recordAdded(List<MovieReview> movieReviews);
+
+    /**
+     * @param previousMovieReview the review as it was before the update, its creation time places it in the rollups
+     */
+    Mono<Void> recordRatingChanged(MovieReview previousMovieReview, double rating);
+
+    Mono<Void> recordDeleted(MovieReview movieReview);
+
+    /**
+     * Recomputes the stats and rollups of every movie from its reviews, for reviews written before they were
+     * maintained: without it the first write to such a movie starts its stats and rollups from that one review.
+     * Meant as a one-off, run while no reviews are written; writes made meanwhile may be lost from the stats.
+     *
+     * @return the number of movies with stats
+     */
+    Mono<Long> rebuild();
+
+    /**
+     * Only the version and lastModified of the stats of a movie, the marker of the last change to its reviews.
+     */
+    Mono<MovieReviewStats> findChangeMarker(String moveInfoId);
+}
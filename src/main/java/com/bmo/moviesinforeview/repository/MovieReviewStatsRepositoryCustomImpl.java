@@ -0,0 +1,329 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class MovieReviewStatsRepositoryCustomImpl implements MovieReviewStatsRepositoryCustom {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MovieReviewStatsRepositoryCustomImpl.class);
+
+    private static final String HISTOGRAM = "histogram.";
+
+    // each conflict is another write to the movie, which is rare enough on one movie for these to suffice
+    private static final int MAX_RECOMPUTE_ATTEMPTS = 5;
+
+    // movies per bulk write of a rebuild
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    // reviews whose movie or rating is not of its type are not counted by any write either
+    private static final Document COUNTED_REVIEW = new Document("$match", new Document("moveInfoId", new Document("$type", "string"))
+            .append("rating", new Document("$type", "number")));
+
+    // MovieReviewStats.histogramBucket(rating)
+    private static final Document HISTOGRAM_BUCKET = new Document("$toString",
+            new Document("$toLong", new Document("$floor", "$rating")));
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieReviewStatsRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<Void> recordAdded(MovieReview movieReview) {
+        return Mono.when(
+                reactiveMongoTemplate.upsert(byMoveInfoId(movieReview.getMoveInfoId()),
+                        additionsUpdate(List.of(movieReview)), MovieReviewStats.class),
+                updateRollups(new RollupChanges().added(movieReview)));
+    }
+
+    @Override
+    public Mono<Void> recordAdded(List<MovieReview> movieReviews) {
+        if (movieReviews.isEmpty()) {
+            return Mono.empty();
+        }
+
+        Map<String, List<MovieReview>> movieReviewsByMoveInfoId = movieReviews.stream()
+                .collect(Collectors.groupingBy(MovieReview::getMoveInfoId));
+        ReactiveBulkOperations bulkOperations =
+                reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MovieReviewStats.class);
+        movieReviewsByMoveInfoId.forEach((moveInfoId, added) ->
+                bulkOperations.upsert(byMoveInfoId(moveInfoId), additionsUpdate(added)));
+        RollupChanges rollupChanges = new RollupChanges();
+        movieReviews.forEach(rollupChanges::added);
+
+        return Mono.when(bulkOperations.execute(), updateRollups(rollupChanges));
+    }
+
+    @Override
+    public Mono<Void> recordRatingChanged(MovieReview previousMovieReview, double rating) {
+        final String moveInfoId = previousMovieReview.getMoveInfoId();
+        final double previousRating = previousMovieReview.getRating();
+        if (Double.compare(previousRating, rating) == 0) {
+            // the comment may still have changed, and with it the lists of the movie
+            return reactiveMongoTemplate.updateFirst(byMoveInfoId(moveInfoId), markChanged(new Update()), MovieReviewStats.class)
+                    .then();
+        }
+
+        Update update = markChanged(new Update())
+                .inc("sum", rating - previousRating)
+                .min("min", rating)
+                .max("max", rating);
+        final String previousBucket = MovieReviewStats.histogramBucket(previousRating);
+        final String bucket = MovieReviewStats.histogramBucket(rating);
+        if (!previousBucket.equals(bucket)) {
+            update.inc(HISTOGRAM + previousBucket, -1).inc(HISTOGRAM + bucket, 1);
+        }
+
+        return Mono.when(
+                reactiveMongoTemplate.findAndModify(byMoveInfoId(moveInfoId), update,
+                                FindAndModifyOptions.options().returnNew(true), MovieReviewStats.class)
+                        .flatMap(stats -> isBound(stats, previousRating) ? recomputeBounds(moveInfoId) : Mono.empty()),
+                updateRollups(new RollupChanges().ratingChanged(previousMovieReview, rating)));
+    }
+
+    @Override
+    public Mono<Void> recordDeleted(MovieReview movieReview) {
+        final String moveInfoId = movieReview.getMoveInfoId();
+        final double rating = movieReview.getRating();
+        Update update = markChanged(new Update())
+                .inc("count", -1)
+                .inc("sum", -rating)
+                .inc(HISTOGRAM + MovieReviewStats.histogramBucket(rating), -1);
+
+        return Mono.when(
+                reactiveMongoTemplate.findAndModify(byMoveInfoId(moveInfoId), update,
+                                FindAndModifyOptions.options().returnNew(true), MovieReviewStats.class)
+                        .flatMap(stats -> {
+                            if (stats.getCount() <= 0) {
+                                // only removed while still empty, a concurrent add may have brought it back
+                                return reactiveMongoTemplate.remove(
+                                                byMoveInfoId(moveInfoId).addCriteria(where("count").lte(0)), MovieReviewStats.class)
+                                        .then();
+                            }
+                            return isBound(stats, rating) ? recomputeBounds(moveInfoId) : Mono.empty();
+                        }),
+                // emptied rollups are kept, the trend skips them
+                updateRollups(new RollupChanges().deleted(movieReview)));
+    }
+
+    @Override
+    public Mono<Long> rebuild() {
+        // the movies with reviews, the stats of any other movie are stale
+        Set<String> moveInfoIds = ConcurrentHashMap.newKeySet();
+        Query allStatsIds = new Query();
+        allStatsIds.fields().include("_id");
+
+        return collection(MovieReview.class)
+                .flatMapMany(collection -> collection.aggregate(statsPipeline()).allowDiskUse(true).batchSize(REBUILD_BATCH_SIZE))
+                .buffer(REBUILD_BATCH_SIZE)
+                .concatMap(statsDocuments -> {
+                    ReactiveBulkOperations bulkOperations =
+                            reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MovieReviewStats.class);
+                    statsDocuments.forEach(statsDocument -> {
+                        final String moveInfoId = statsDocument.getString("_id");
+                        moveInfoIds.add(moveInfoId);
+                        // a new version, so caches keyed by the change marker drop what they read before
+                        bulkOperations.upsert(byMoveInfoId(moveInfoId), markChanged(new Update())
+                                .set("count", statsDocument.get("count"))
+                                .set("sum", statsDocument.get("sum"))
+                                .set("min", statsDocument.get("min"))
+                                .set("max", statsDocument.get("max"))
+                                .set("histogram", statsDocument.get("histogram")));
+                    });
+                    return bulkOperations.execute();
+                })
+                .thenMany(reactiveMongoTemplate.find(allStatsIds, MovieReviewStats.class))
+                .map(MovieReviewStats::getMoveInfoId)
+                .filter(moveInfoId -> !moveInfoIds.contains(moveInfoId))
+                .buffer(REBUILD_BATCH_SIZE)
+                .concatMap(staleIds -> reactiveMongoTemplate.remove(Query.query(where("_id").in(staleIds)), MovieReviewStats.class))
+                .then(rebuildRollups())
+                .then(Mono.fromCallable(() -> (long) moveInfoIds.size()));
+    }
+
+    // rollups carry no change marker, they are all dropped and merged back from the reviews
+    private Mono<Void> rebuildRollups() {
+        final String rollupCollectionName = reactiveMongoTemplate.getCollectionName(MovieReviewRollup.class);
+        return reactiveMongoTemplate.remove(new Query(), MovieReviewRollup.class)
+                .then(collection(MovieReview.class))
+                .flatMapMany(collection -> Flux.fromArray(MovieReviewRollup.Bucket.values())
+                        .concatMap(bucket -> collection.aggregate(rollupPipeline(bucket, rollupCollectionName))
+                                .allowDiskUse(true)
+                                .toCollection()))
+                .then();
+    }
+
+    private static List<Document> statsPipeline() {
+        return List.of(
+                COUNTED_REVIEW,
+                new Document("$group", new Document("_id", new Document("moveInfoId", "$moveInfoId").append("histogramBucket", HISTOGRAM_BUCKET))
+                        .append("count", new Document("$sum", 1L))
+                        .append("sum", new Document("$sum", "$rating"))
+                        .append("min", new Document("$min", "$rating"))
+                        .append("max", new Document("$max", "$rating"))),
+                new Document("$group", new Document("_id", "$_id.moveInfoId")
+                        .append("count", new Document("$sum", "$count"))
+                        .append("sum", new Document("$sum", "$sum"))
+                        .append("min", new Document("$min", "$min"))
+                        .append("max", new Document("$max", "$max"))
+                        .append("histogram", new Document("$push", new Document("k", "$_id.histogramBucket").append("v", "$count")))),
+                new Document("$set", new Document("histogram", new Document("$arrayToObject", "$histogram"))));
+    }
+
+    /**
+     * The rollups of one bucket size, written as {@link RollupChanges} would have: the same ids, and reviews
+     * without a creation time placed by the time in their id.
+     */
+    private static List<Document> rollupPipeline(MovieReviewRollup.Bucket bucket, String rollupCollectionName) {
+        final long bucketMillis = bucket.getDuration().toMillis();
+        Document createdAtMillis = new Document("$toLong", "$createdAt");
+        return List.of(
+                COUNTED_REVIEW,
+                new Document("$set", new Document("createdAt", new Document("$ifNull", List.of("$createdAt",
+                        new Document("$cond", List.of(new Document("$eq", List.of(new Document("$type", "$_id"), "objectId")),
+                                new Document("$toDate", "$_id"), "$$REMOVE")))))),
+                new Document("$match", new Document("createdAt", new Document("$type", "date"))),
+                new Document("$set", new Document("start", new Document("$toDate", new Document("$subtract",
+                        List.of(createdAtMillis, new Document("$mod", List.of(createdAtMillis, bucketMillis))))))),
+                new Document("$group", new Document("_id", new Document("moveInfoId", "$moveInfoId").append("start", "$start")
+                        .append("histogramBucket", HISTOGRAM_BUCKET))
+                        .append("count", new Document("$sum", 1L))
+                        .append("sum", new Document("$sum", "$rating"))),
+                new Document("$group", new Document("_id", new Document("moveInfoId", "$_id.moveInfoId").append("start", "$_id.start"))
+                        .append("count", new Document("$sum", "$count"))
+                        .append("sum", new Document("$sum", "$sum"))
+                        .append("histogram", new Document("$push", new Document("k", "$_id.histogramBucket").append("v", "$count")))),
+                // MovieReviewRollup.idOf(moveInfoId, bucket, start), Instant.toString() of a whole hour or day
+                new Document("$project", new Document("_id", new Document("$concat", List.of("$_id.moveInfoId", "|" + bucket + "|",
+                        new Document("$dateToString", new Document("date", "$_id.start").append("format", "%Y-%m-%dT%H:%M:%SZ")))))
+                        .append("moveInfoId", "$_id.moveInfoId")
+                        .append("bucket", new Document("$literal", bucket.name()))
+                        .append("start", "$_id.start")
+                        .append("count", 1)
+                        .append("sum", 1)
+                        .append("histogram", new Document("$arrayToObject", "$histogram"))),
+                new Document("$merge", new Document("into", rollupCollectionName)
+                        .append("on", "_id")
+                        .append("whenMatched", "replace")
+                        .append("whenNotMatched", "insert")));
+    }
+
+    private Mono<MongoCollection<Document>> collection(Class<?> entityClass) {
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(entityClass));
+    }
+
+    @Override
+    public Mono<MovieReviewStats> findChangeMarker(String moveInfoId) {
+        Query query = byMoveInfoId(moveInfoId);
+        query.fields().include("version", "lastModified");
+        return reactiveMongoTemplate.findOne(query, MovieReviewStats.class);
+    }
+
+    private Mono<Void> updateRollups(RollupChanges rollupChanges) {
+        if (rollupChanges.isEmpty()) {
+            return Mono.empty();
+        }
+
+        ReactiveBulkOperations bulkOperations =
+                reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MovieReviewRollup.class);
+        rollupChanges.forEach((id, update) -> bulkOperations.upsert(Query.query(where("_id").is(id)), update));
+        return bulkOperations.execute().then();
+    }
+
+    /**
+     * min and max cannot be decremented, so when the rating that left was one of them they are read back
+     * from the reviews of the movie. This only happens for the extreme ratings and uses the moveInfoId index.
+     * <p>
+     * The bounds are only set while the stats are at the version read before the aggregation; a write in
+     * between may have added a rating the aggregation missed, so it is read again.
+     */
+    private Mono<Void> recomputeBounds(String moveInfoId) {
+        return recomputeBounds(moveInfoId, MAX_RECOMPUTE_ATTEMPTS);
+    }
+
+    private Mono<Void> recomputeBounds(String moveInfoId, int attempts) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                match(Criteria.where("moveInfoId").is(moveInfoId)),
+                group().min("rating").as("min").max("rating").as("max")
+        );
+
+        return findChangeMarker(moveInfoId)
+                .flatMap(changeMarker -> reactiveMongoTemplate.aggregate(aggregation, MovieReview.class, Document.class)
+                        .next()
+                        .flatMap(bounds -> reactiveMongoTemplate.updateFirst(
+                                byMoveInfoId(moveInfoId).addCriteria(where("version").is(changeMarker.getVersion())),
+                                new Update().set("min", bounds.get("min")).set("max", bounds.get("max")),
+                                MovieReviewStats.class)))
+                .flatMap(updateResult -> {
+                    if (updateResult.getMatchedCount() > 0) {
+                        return Mono.empty();
+                    }
+                    if (attempts <= 1) {
+                        LOGGER.warn("Bounds of movie {} not recomputed, its reviews kept changing", moveInfoId);
+                        return Mono.empty();
+                    }
+                    return recomputeBounds(moveInfoId, attempts - 1);
+                })
+                .then();
+    }
+
+    private static Update additionsUpdate(List<MovieReview> added) {
+        Update update = markChanged(new Update()).inc("count", added.size());
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (MovieReview movieReview : added) {
+            final double rating = movieReview.getRating();
+            sum += rating;
+            min = Math.min(min, rating);
+            max = Math.max(max, rating);
+        }
+
+        Map<String, Long> histogram = added.stream()
+                .collect(Collectors.groupingBy(movieReview -> MovieReviewStats.histogramBucket(movieReview.getRating()),
+                        Collectors.counting()));
+        histogram.forEach((bucket, count) -> update.inc(HISTOGRAM + bucket, count));
+
+        return update.inc("sum", sum).min("min", min).max("max", max);
+    }
+
+    private static Update markChanged(Update update) {
+        // the server clock, so the markers written by every instance are comparable
+        return update.inc("version", 1).currentDate("lastModified");
+    }
+
+    private static boolean isBound(MovieReviewStats stats, double rating) {
+        return (stats.getMin() != null && rating <= stats.getMin())
+                || (stats.getMax() != null && rating >= stats.getMax());
+    }
+
+    private static Query byMoveInfoId(String moveInfoId) {
+        return Query.query(where("_id").is(moveInfoId));
+    }
+}
@@ -0,0 +1,223 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.exception.ReviewOverloadedException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in write-behind for single review inserts ({@code reviews.write-behind.enabled=true}). Reviews are collected
+ * into batches of up to {@code batch-size} reviews, or whatever arrived within {@code max-linger}, and each batch
+ * is written with one unordered bulk insert and one stats update per movie. Every caller still gets its own
+ * saved review or error; a caller that cancels does not take its review out of a batch.
+ * <p>
+ * At most {@code max-pending} reviews wait for or sit in a batch, further inserts are refused with a 503. If the
+ * pipeline ever stops, the reviews still pending and every later insert fail instead of waiting forever.
+ */
+@Component
+@ConditionalOnProperty(name = "reviews.write-behind.enabled", havingValue = "true")
+public class ReviewWriteBehind {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReviewWriteBehind.class);
+
+    private static final Duration OVERLOADED_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private record PendingReview(MovieReview movieReview, MonoSink<MovieReview> result) {
+
+        // by identity, the review is given its id while pending
+        @Override
+        public boolean equals(Object other) {
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    private final MovieReviewRepository movieReviewRepository;
+
+    private final MovieReviewStatsRepository movieReviewStatsRepository;
+
+    private final DistributionSummary batchSizeSummary;
+
+    private final int maxPending;
+
+    private final Duration shutdownTimeout;
+
+    // inserted and not answered yet, so they can be failed if the pipeline stops
+    private final Set<PendingReview> pendingReviews = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private volatile boolean stopped;
+
+    private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+    private final Disposable pipeline;
+
+    private FluxSink<PendingReview> pendingReviewSink;
+
+    public ReviewWriteBehind(MovieReviewRepository movieReviewRepository,
+                             MovieReviewStatsRepository movieReviewStatsRepository,
+                             ObjectProvider<MeterRegistry> meterRegistry,
+                             @Value("${reviews.write-behind.batch-size:200}") int batchSize,
+                             @Value("${reviews.write-behind.max-linger:5ms}") Duration maxLinger,
+                             @Value("${reviews.write-behind.max-concurrent-flushes:4}") int maxConcurrentFlushes,
+                             @Value("${reviews.write-behind.max-pending:10000}") int maxPending,
+                             @Value("${reviews.write-behind.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.movieReviewRepository = movieReviewRepository;
+        this.movieReviewStatsRepository = movieReviewStatsRepository;
+        this.maxPending = maxPending;
+        this.shutdownTimeout = shutdownTimeout;
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        this.batchSizeSummary = registry == null ? null : DistributionSummary.builder("reviews.write-behind.batch.size")
+                .description("Reviews written per bulk insert")
+                .register(registry);
+
+        // FluxSink serializes concurrent callers, the requests of every event loop feed the same batches; the
+        // buffer is bounded by maxPending. The fair bufferTimeout holds a batch back while every flush is busy,
+        // instead of failing with an overflow when max-linger expires.
+        this.pipeline = Flux.<PendingReview>create(sink -> this.pendingReviewSink = sink, FluxSink.OverflowStrategy.BUFFER)
+                .bufferTimeout(batchSize, maxLinger, true)
+                .flatMap(this::flush, maxConcurrentFlushes)
+                .doOnError(ex -> LOGGER.error("Review write-behind stopped: {}", ex.getMessage(), ex))
+                .doFinally(signalType -> {
+                    failPending();
+                    flushed.complete(null);
+                })
+                .subscribe();
+    }
+
+    /**
+     * Inserts the review with the next batch and counts it in the stats of its movie.
+     *
+     * @return the saved review, with its id and version, once its batch is written
+     */
+    public Mono<MovieReview> insert(MovieReview movieReview) {
+        return Mono.create(result -> {
+            if (pendingCount.incrementAndGet() > maxPending) {
+                pendingCount.decrementAndGet();
+                result.error(new ReviewOverloadedException("Too many reviews waiting to be written", OVERLOADED_RETRY_AFTER));
+                return;
+            }
+
+            PendingReview pendingReview = new PendingReview(movieReview, result);
+            pendingReviews.add(pendingReview);
+            // checked after adding, so either this insert or failPending() sees the other
+            if (stopped) {
+                error(pendingReview, stoppedException());
+                return;
+            }
+            pendingReviewSink.next(pendingReview);
+        });
+    }
+
+    private Mono<Void> flush(List<PendingReview> batch) {
+        List<MovieReview> movieReviews = new ArrayList<>(batch.size());
+        for (PendingReview pendingReview : batch) {
+            MovieReview movieReview = pendingReview.movieReview();
+            // ids are assigned up front because bulk writes do not report generated ids back
+            if (movieReview.getId() == null) {
+                movieReview.setId(new ObjectId().toHexString());
+            }
+            movieReview.setVersion(0L);
+            movieReviews.add(movieReview);
+        }
+        if (batchSizeSummary != null) {
+            batchSizeSummary.record(batch.size());
+        }
+
+        return movieReviewRepository.insertUnordered(movieReviews)
+                .flatMap(failures -> {
+                    List<MovieReview> insertedMovieReviews = new ArrayList<>(movieReviews.size());
+                    for (int i = 0; i < movieReviews.size(); i++) {
+                        if (!failures.containsKey(i)) {
+                            insertedMovieReviews.add(movieReviews.get(i));
+                        }
+                    }
+                    return movieReviewStatsRepository.recordAdded(insertedMovieReviews)
+                            .then(Mono.fromRunnable(() -> complete(batch, failures)));
+                })
+                .onErrorResume(ex -> Mono.fromRunnable(() -> batch.forEach(pendingReview -> error(pendingReview, ex))))
+                .then();
+    }
+
+    private void complete(List<PendingReview> batch, Map<Integer, String> failures) {
+        for (int i = 0; i < batch.size(); i++) {
+            PendingReview pendingReview = batch.get(i);
+            String failure = failures.get(i);
+            if (failure == null) {
+                if (pendingReviews.remove(pendingReview)) {
+                    pendingCount.decrementAndGet();
+                }
+                pendingReview.result().success(pendingReview.movieReview());
+            } else {
+                error(pendingReview, new DataIntegrityViolationException(failure));
+            }
+        }
+    }
+
+    private void error(PendingReview pendingReview, Throwable ex) {
+        if (pendingReviews.remove(pendingReview)) {
+            pendingCount.decrementAndGet();
+        }
+        pendingReview.result().error(ex);
+    }
+
+    private void failPending() {
+        stopped = true;
+        for (PendingReview pendingReview : pendingReviews) {
+            error(pendingReview, stoppedException());
+        }
+    }
+
+    private static IllegalStateException stoppedException() {
+        return new IllegalStateException("Review write-behind is stopped");
+    }
+
+    /**
+     * Writes the reviews still waiting for their batch before the Mongo client goes away, and fails those that
+     * could not be written within {@code shutdown-timeout}.
+     */
+    @PreDestroy
+    public void stop() {
+        pendingReviewSink.complete();
+        try {
+            flushed.get(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.warn("Reviews not written within {} are failed and may be lost", shutdownTimeout);
+            // cancels the flushes still running, which fails their reviews
+            pipeline.dispose();
+        }
+    }
+}
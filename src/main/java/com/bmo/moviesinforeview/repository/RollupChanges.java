@@ -0,0 +1,94 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Folds the changes of a write into one increment per rollup it touches, an hour and a day per review.
+ */
+final class RollupChanges {
+
+    private static final String HISTOGRAM = "histogram.";
+
+    private static final class Change {
+
+        private final String moveInfoId;
+        private final MovieReviewRollup.Bucket bucket;
+        private final Instant start;
+        private long count;
+        private double sum;
+        private final Map<String, Long> histogram = new LinkedHashMap<>();
+
+        Change(String moveInfoId, MovieReviewRollup.Bucket bucket, Instant start) {
+            this.moveInfoId = moveInfoId;
+            this.bucket = bucket;
+            this.start = start;
+        }
+
+        void add(double rating, int sign) {
+            count += sign;
+            sum += sign * rating;
+            histogram.merge(MovieReviewStats.histogramBucket(rating), (long) sign, Long::sum);
+        }
+    }
+
+    private final Map<String, Change> changes = new LinkedHashMap<>();
+
+    RollupChanges added(MovieReview movieReview) {
+        return record(movieReview, (change, rating) -> change.add(rating, 1));
+    }
+
+    RollupChanges deleted(MovieReview movieReview) {
+        return record(movieReview, (change, rating) -> change.add(rating, -1));
+    }
+
+    RollupChanges ratingChanged(MovieReview previousMovieReview, double rating) {
+        return record(previousMovieReview, (change, previousRating) -> {
+            change.add(previousRating, -1);
+            change.add(rating, 1);
+        });
+    }
+
+    boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    void forEach(BiConsumer<String, Update> consumer) {
+        changes.forEach((id, change) -> {
+            Update update = new Update()
+                    .setOnInsert("moveInfoId", change.moveInfoId)
+                    .setOnInsert("bucket", change.bucket)
+                    .setOnInsert("start", change.start)
+                    .inc("count", change.count)
+                    .inc("sum", change.sum);
+            change.histogram.forEach((histogramBucket, count) -> {
+                if (count != 0) {
+                    update.inc(HISTOGRAM + histogramBucket, count);
+                }
+            });
+            consumer.accept(id, update);
+        });
+    }
+
+    private RollupChanges record(MovieReview movieReview, BiConsumer<Change, Double> recorder) {
+        final Instant createdAt = MovieReviewRollup.createdAtOf(movieReview);
+        // a review without a creation time cannot be placed on the trend
+        if (createdAt == null) {
+            return this;
+        }
+        for (MovieReviewRollup.Bucket bucket : MovieReviewRollup.Bucket.values()) {
+            final Instant start = bucket.startOf(createdAt);
+            Change change = changes.computeIfAbsent(MovieReviewRollup.idOf(movieReview.getMoveInfoId(), bucket, start),
+                    id -> new Change(movieReview.getMoveInfoId(), bucket, start));
+            recorder.accept(change, movieReview.getRating());
+        }
+        return this;
+    }
+}
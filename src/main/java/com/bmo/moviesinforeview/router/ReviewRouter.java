@@ -1,5 +1,6 @@
 package com.bmo.moviesinforeview.router;
 
+import com.bmo.moviesinforeview.admission.AdmissionControl;
 import com.bmo.moviesinforeview.handler.ReviewHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -15,15 +16,21 @@ public class ReviewRouter {
     private String ENDPOINT = "/v1/reviews";
 
     @Bean
-    public RouterFunction<ServerResponse> reviewsRoute(ReviewHandler reviewHandler) {
+    public RouterFunction<ServerResponse> reviewsRoute(ReviewHandler reviewHandler, AdmissionControl admissionControl) {
         return route()
                 .nest(path(ENDPOINT), builder ->
                     builder
-                        .POST("", request -> reviewHandler.addReview(request))
-                        .GET("", request -> reviewHandler.getAllReviews(request))
-                        .PUT("/{id}", request -> reviewHandler.updateReview(request))
-                        .DELETE("/{id}", request -> reviewHandler.deleteReview(request))
-                        .GET("/stream", request -> reviewHandler.getReviewsStream(request))
+                        .POST("", admissionControl.forRoute("add").apply(request -> reviewHandler.addReview(request)))
+                        .POST("/batch", admissionControl.forRoute("add-batch").apply(request -> reviewHandler.addReviews(request)))
+                        .POST("/by-movies", admissionControl.forRoute("by-movies").apply(request -> reviewHandler.getReviewsOfMovies(request)))
+                        .GET("", admissionControl.forRoute("list").apply(request -> reviewHandler.getAllReviews(request)))
+                        .PUT("/{id}", admissionControl.forRoute("update").apply(request -> reviewHandler.updateReview(request)))
+                        .DELETE("/{id}", admissionControl.forRoute("delete").apply(request -> reviewHandler.deleteReview(request)))
+                        .GET("/stream", admissionControl.forRoute("stream").apply(request -> reviewHandler.getReviewsStream(request)))
+                        .GET("/stats/{moveInfoId}", admissionControl.forRoute("stats").apply(request -> reviewHandler.getReviewStats(request)))
+                        .GET("/stats/{moveInfoId}/trend", admissionControl.forRoute("trend").apply(request -> reviewHandler.getReviewTrend(request)))
+                        .GET("/top/{moveInfoId}", admissionControl.forRoute("top").apply(request -> reviewHandler.getTopReviews(request)))
+                        .GET("/search", admissionControl.forRoute("search").apply(request -> reviewHandler.searchReviews(request)))
                 )
                 .build();
     }
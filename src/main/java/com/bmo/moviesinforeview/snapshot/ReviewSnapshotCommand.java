@@ -0,0 +1,81 @@
+package com.bmo.moviesinforeview.snapshot;
+
+import com.bmo.moviesinforeview.repository.MovieReviewStatsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The {@code snapshot} command of the application jar:
+ * <pre>
+ * java -jar movies-info-review.jar snapshot export|import &lt;file&gt; [--spring.data.mongodb.uri=...]
+ * java -jar movies-info-review.jar snapshot rebuild-stats [--spring.data.mongodb.uri=...]
+ * </pre>
+ * starts the application without its web server, exports the reviews to the file or imports them from it with
+ * {@link ReviewSnapshots}, logs the throughput and exits: 0 on success, 1 when it failed or some reviews could not
+ * be imported, 2 on a usage error. {@code rebuild-stats} recomputes the stats and rollups of every movie from its
+ * reviews with {@link MovieReviewStatsRepository#rebuild()}, once for reviews written before they were kept and
+ * while no reviews are written.
+ */
+public final class ReviewSnapshotCommand {
+
+    public static final String NAME = "snapshot";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReviewSnapshotCommand.class);
+
+    private static final String USAGE = "Usage: snapshot export|import <file> | rebuild-stats [--property=value ...]";
+
+    private static final String REBUILD_STATS = "rebuild-stats";
+
+    private ReviewSnapshotCommand() {
+    }
+
+    public static boolean isInvoked(String[] args) {
+        return args.length > 0 && args[0].equals(NAME);
+    }
+
+    public static int run(Class<?> applicationClass, String[] args) {
+        if (args.length > 1 && args[1].equals(REBUILD_STATS)) {
+            return rebuildStats(applicationClass, args);
+        }
+        if (args.length < 3 || !(args[1].equals("export") || args[1].equals("import"))) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        final boolean export = args[1].equals("export");
+        final Path file = Path.of(args[2]);
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(applicationClass)
+                .web(WebApplicationType.NONE)
+                .run(Arrays.copyOfRange(args, 3, args.length))) {
+            ReviewSnapshots reviewSnapshots = context.getBean(ReviewSnapshots.class);
+            SnapshotReport report = (export ? reviewSnapshots.export(file) : reviewSnapshots.importFrom(file)).block();
+            LOGGER.info("Snapshot {}", report);
+            return report.failed() > 0 ? 1 : 0;
+        } catch (RuntimeException e) {
+            LOGGER.error("Snapshot {} of {} failed: {}", args[1], file, e.getMessage(), e);
+            return 1;
+        }
+    }
+
+    private static int rebuildStats(Class<?> applicationClass, String[] args) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(applicationClass)
+                .web(WebApplicationType.NONE)
+                .run(Arrays.copyOfRange(args, 2, args.length))) {
+            final long started = System.nanoTime();
+            Long movies = context.getBean(MovieReviewStatsRepository.class).rebuild().block();
+            LOGGER.info("Rebuilt the stats of {} movies in {} ms", movies,
+                    Duration.ofNanos(System.nanoTime() - started).toMillis());
+            return 0;
+        } catch (RuntimeException e) {
+            LOGGER.error("Rebuilding the stats failed: {}", e.getMessage(), e);
+            return 1;
+        }
+    }
+}
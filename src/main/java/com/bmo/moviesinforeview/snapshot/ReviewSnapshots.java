@@ -0,0 +1,224 @@
+package com.bmo.moviesinforeview.snapshot;
+
+import com.bmo.moviesinforeview.cache.ReviewsByMovieCache;
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.repository.MovieReviewStatsRepository;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Exports the reviews to a snapshot file and imports them back, to reseed an environment or rebuild a collection.
+ * <p>
+ * Reviews travel as the raw BSON the driver reads and writes, they are never mapped to {@link MovieReview} and back.
+ * Both directions stream: an export holds no more than one cursor batch of reviews, an import no more than
+ * {@code max-concurrent-batches + 1} batches of {@code batch-size} reviews, whatever the size of the collection.
+ * An import inserts each batch with one unordered bulk write, so reviews whose id already exists are counted as
+ * failed without stopping the others, and records the inserted reviews in the stats and rollups of their movies.
+ * Documents without a movie and a numeric rating, or that cannot be decoded, cannot be recorded there: they are
+ * not inserted and are counted as failed too.
+ * An export is not a point-in-time copy, reviews written meanwhile may or may not be in it.
+ */
+@Component
+public class ReviewSnapshots {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReviewSnapshots.class);
+
+    // a snapshot of legacy documents may hold millions of them, the report counts the rest
+    private static final int MAX_LOGGED_MALFORMED_DOCUMENTS = 10;
+
+    /**
+     * A document of the snapshot with what the stats need from it, read once before it is inserted.
+     */
+    private record SnapshotReview(RawBsonDocument document, MovieReview rating) {
+    }
+
+    private record BatchOutcome(int inserted, int failed) {
+    }
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final MovieReviewStatsRepository movieReviewStatsRepository;
+
+    private final ReviewsByMovieCache reviewsByMovieCache;
+
+    private final int batchSize;
+
+    private final int maxConcurrentBatches;
+
+    public ReviewSnapshots(ReactiveMongoTemplate reactiveMongoTemplate,
+                           MovieReviewStatsRepository movieReviewStatsRepository,
+                           ReviewsByMovieCache reviewsByMovieCache,
+                           @Value("${reviews.snapshot.batch-size:1000}") int batchSize,
+                           @Value("${reviews.snapshot.max-concurrent-batches:4}") int maxConcurrentBatches) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.movieReviewStatsRepository = movieReviewStatsRepository;
+        this.reviewsByMovieCache = reviewsByMovieCache;
+        this.batchSize = batchSize;
+        this.maxConcurrentBatches = maxConcurrentBatches;
+    }
+
+    public Mono<SnapshotReport> export(Path file) {
+        return reviewCollection().flatMap(collection -> Mono.using(
+                () -> new SnapshotWriter(file),
+                writer -> {
+                    final long start = System.nanoTime();
+                    AtomicLong bsonBytes = new AtomicLong();
+                    return Flux.from(collection.find().batchSize(batchSize))
+                            // file writes block, they are kept off the driver threads
+                            .publishOn(Schedulers.boundedElastic(), batchSize)
+                            .doOnNext(document -> bsonBytes.addAndGet(write(writer, document)))
+                            .count()
+                            .map(documents -> new SnapshotReport("export", documents, 0, bsonBytes.get(), finish(writer),
+                                    Duration.ofNanos(System.nanoTime() - start)));
+                },
+                ReviewSnapshots::close));
+    }
+
+    public Mono<SnapshotReport> importFrom(Path file) {
+        return reviewCollection().flatMap(collection -> Mono.using(
+                () -> new SnapshotReader(file),
+                reader -> {
+                    final long start = System.nanoTime();
+                    AtomicLong inserted = new AtomicLong();
+                    AtomicLong failed = new AtomicLong();
+                    AtomicLong read = new AtomicLong();
+                    return Flux.<RawBsonDocument>generate(sink -> {
+                                RawBsonDocument document = next(reader);
+                                if (document == null) {
+                                    sink.complete();
+                                } else {
+                                    sink.next(document);
+                                }
+                            })
+                            // reads block, and the inserts request more documents from the driver threads
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .<SnapshotReview>handle((document, sink) -> {
+                                final long number = read.incrementAndGet();
+                                try {
+                                    sink.next(new SnapshotReview(document, ratingOf(document)));
+                                } catch (RuntimeException ex) {
+                                    // a corrupt document fails its decoding in many ways, BSONException being one
+                                    if (failed.incrementAndGet() <= MAX_LOGGED_MALFORMED_DOCUMENTS) {
+                                        LOGGER.warn("Document {} of {} is not imported: {}", number, file, ex.getMessage());
+                                    }
+                                }
+                            })
+                            .buffer(batchSize)
+                            .flatMap(batch -> insertBatch(collection, batch), maxConcurrentBatches)
+                            .doOnNext(outcome -> {
+                                inserted.addAndGet(outcome.inserted());
+                                failed.addAndGet(outcome.failed());
+                            })
+                            .then(Mono.fromCallable(() -> new SnapshotReport("import", inserted.get(), failed.get(),
+                                    reader.bytesRead(), Files.size(file), Duration.ofNanos(System.nanoTime() - start))));
+                },
+                ReviewSnapshots::close))
+                .doFinally(signalType -> reviewsByMovieCache.invalidateAll());
+    }
+
+    private Mono<MongoCollection<RawBsonDocument>> reviewCollection() {
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieReview.class))
+                .map(collection -> collection.withDocumentClass(RawBsonDocument.class));
+    }
+
+    private Mono<BatchOutcome> insertBatch(MongoCollection<RawBsonDocument> collection, List<SnapshotReview> batch) {
+        List<RawBsonDocument> documents = batch.stream().map(SnapshotReview::document).toList();
+        return Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false)))
+                .map(insertManyResult -> Set.<Integer>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .map(BulkWriteError::getIndex)
+                        .collect(Collectors.toSet())))
+                .flatMap(failures -> {
+                    List<MovieReview> insertedMovieReviews = new ArrayList<>(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (!failures.contains(i)) {
+                            insertedMovieReviews.add(batch.get(i).rating());
+                        }
+                    }
+                    return movieReviewStatsRepository.recordAdded(insertedMovieReviews)
+                            .thenReturn(new BatchOutcome(insertedMovieReviews.size(), failures.size()));
+                });
+    }
+
+    /**
+     * The stats and rollups only need the movie, the rating and the creation time, read straight from the BSON.
+     *
+     * @throws IllegalArgumentException when the movie or the rating is missing or not of its type
+     * @throws RuntimeException         when the document cannot be decoded
+     */
+    private static MovieReview ratingOf(RawBsonDocument document) {
+        BsonValue id = document.get("_id");
+        BsonValue moveInfoId = document.get("moveInfoId");
+        BsonValue rating = document.get("rating");
+        BsonValue createdAt = document.get("createdAt");
+        if (moveInfoId == null || !moveInfoId.isString()) {
+            throw new IllegalArgumentException("moveInfoId: must be a string");
+        }
+        if (rating == null || !rating.isNumber()) {
+            throw new IllegalArgumentException("rating: must be a number");
+        }
+        return MovieReview.builder()
+                .id(id != null && id.isObjectId() ? id.asObjectId().getValue().toHexString() : null)
+                .moveInfoId(moveInfoId.asString().getValue())
+                .rating(rating.asNumber().doubleValue())
+                .createdAt(createdAt != null && createdAt.isDateTime() ? Instant.ofEpochMilli(createdAt.asDateTime().getValue()) : null)
+                .build();
+    }
+
+    private static int write(SnapshotWriter writer, RawBsonDocument document) {
+        try {
+            return writer.write(document);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long finish(SnapshotWriter writer) {
+        try {
+            return writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static RawBsonDocument next(SnapshotReader reader) {
+        try {
+            return reader.next();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.bmo.moviesinforeview.snapshot;
+
+import org.bson.RawBsonDocument;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads back a snapshot written by {@link SnapshotWriter}, one document at a time.
+ */
+final class SnapshotReader implements Closeable {
+
+    // an empty document is 5 bytes, and Mongo does not store documents over 16 MB
+    private static final int MIN_DOCUMENT_SIZE = 5;
+    private static final int MAX_DOCUMENT_SIZE = 16 * 1024 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private long bytesRead;
+
+    SnapshotReader(Path file) throws IOException {
+        FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.channel = Channels.newChannel(
+                    new GZIPInputStream(Channels.newInputStream(fileChannel), SnapshotWriter.BUFFER_SIZE));
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the next document, null once the snapshot is read to its end
+     */
+    RawBsonDocument next() throws IOException {
+        lengthBuffer.clear();
+        if (!readFully(lengthBuffer)) {
+            if (lengthBuffer.position() == 0) {
+                return null;
+            }
+            throw new EOFException("Snapshot ends inside a document");
+        }
+
+        final int length = lengthBuffer.getInt(0);
+        if (length < MIN_DOCUMENT_SIZE || length > MAX_DOCUMENT_SIZE) {
+            throw new IOException("Not a review snapshot: document of " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer document = ByteBuffer.wrap(bytes);
+        document.put(lengthBuffer.flip());
+        if (!readFully(document)) {
+            throw new EOFException("Snapshot ends inside a document");
+        }
+        bytesRead += length;
+        return new RawBsonDocument(bytes);
+    }
+
+    /**
+     * @return the uncompressed bytes of the documents read so far
+     */
+    long bytesRead() {
+        return bytesRead;
+    }
+
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
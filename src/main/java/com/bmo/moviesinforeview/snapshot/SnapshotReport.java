@@ -0,0 +1,35 @@
+package com.bmo.moviesinforeview.snapshot;
+
+import java.time.Duration;
+
+/**
+ * Outcome of an export or import.
+ *
+ * @param documents   reviews written to, or inserted from, the snapshot
+ * @param failed      reviews of the snapshot that could not be inserted, such as ids that already exist or
+ *                    documents without a movie or a rating
+ * @param bsonBytes   uncompressed size of the documents
+ * @param fileBytes   size of the snapshot file
+ */
+public record SnapshotReport(String operation, long documents, long failed, long bsonBytes, long fileBytes,
+                             Duration duration) {
+
+    public double documentsPerSecond() {
+        return documents / seconds();
+    }
+
+    public double megabytesPerSecond() {
+        return bsonBytes / (1024.0 * 1024.0) / seconds();
+    }
+
+    private double seconds() {
+        return Math.max(duration.toNanos(), 1) / 1e9;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d reviews (%d failed), %.1f MB of BSON in a %.1f MB snapshot, %.1fs, %.0f reviews/s, %.1f MB/s",
+                operation, documents, failed, bsonBytes / (1024.0 * 1024.0), fileBytes / (1024.0 * 1024.0),
+                duration.toMillis() / 1000.0, documentsPerSecond(), megabytesPerSecond());
+    }
+}
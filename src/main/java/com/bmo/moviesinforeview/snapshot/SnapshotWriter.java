@@ -0,0 +1,80 @@
+package com.bmo.moviesinforeview.snapshot;
+
+import org.bson.RawBsonDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a snapshot: the BSON documents one after the other, each prefixed by its own length as BSON is, and
+ * gzipped. That is the layout of a mongodump {@code .bson} file, so {@code gunzip -c | bsondump} reads it too.
+ * The snapshot is written next to its file and only moved in place by {@link #finish()}, so a failed export never
+ * leaves a truncated snapshot behind.
+ */
+final class SnapshotWriter implements Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Path partFile;
+    private final FileChannel fileChannel;
+    private final GZIPOutputStream gzipOutputStream;
+    private final WritableByteChannel channel;
+    private boolean finished;
+
+    SnapshotWriter(Path file) throws IOException {
+        this.file = file;
+        this.partFile = file.resolveSibling(file.getFileName() + ".part");
+        this.fileChannel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.gzipOutputStream = new GZIPOutputStream(Channels.newOutputStream(fileChannel), BUFFER_SIZE);
+        this.channel = Channels.newChannel(gzipOutputStream);
+    }
+
+    /**
+     * @return the size of the document in bytes
+     */
+    int write(RawBsonDocument document) throws IOException {
+        ByteBuffer bytes = document.getByteBuffer().asNIO();
+        final int size = bytes.remaining();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        return size;
+    }
+
+    /**
+     * Completes the snapshot and moves it in place.
+     *
+     * @return the size of the snapshot file in bytes
+     */
+    long finish() throws IOException {
+        gzipOutputStream.finish();
+        fileChannel.force(false);
+        channel.close();
+        Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+        return Files.size(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(partFile);
+        }
+    }
+}
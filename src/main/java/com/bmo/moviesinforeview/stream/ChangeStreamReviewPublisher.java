@@ -0,0 +1,260 @@
+package com.bmo.moviesinforeview.stream;
+
+import com.bmo.moviesinforeview.cache.ReviewsByMovieCache;
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.ReviewEvent;
+import com.bmo.moviesinforeview.domain.ReviewStreamCheckpoint;
+import com.mongodb.MongoCommandException;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Feeds the {@link ReviewBroadcaster} from the change stream of the review collection, so every instance
+ * streams the writes of all instances. The resume token of the last event is checkpointed in Mongo: after a
+ * restart or a lost connection the stream carries on where it stopped. The tokens are also the SSE event
+ * ids: a client reconnecting with {@code Last-Event-ID} gets the events it missed replayed from a change stream
+ * of its own, only up to the position of the shared stream, and is then handed over to the shared stream.
+ * At most {@code reviews.stream.max-concurrent-replays} replays run at once, further clients join the shared
+ * stream directly. Change streams need a replica set, a single node one is enough for development.
+ */
+@Component
+@ConditionalOnProperty(name = "reviews.stream.source", havingValue = "change-stream")
+public class ChangeStreamReviewPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeStreamReviewPublisher.class);
+
+    private static final String CHECKPOINT_ID = "movieReview";
+
+    // ChangeStreamHistoryLost: the resume token is older than the oplog
+    private static final int HISTORY_LOST_ERROR_CODE = 286;
+
+    // the _data of a resume token: upper case hex, so that tokens sort in oplog order as strings
+    private static final Pattern RESUME_TOKEN_DATA = Pattern.compile("(?:[0-9A-F]{2}){1,1024}");
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final ReviewBroadcaster reviewBroadcaster;
+
+    private final ReviewsByMovieCache reviewsByMovieCache;
+
+    private final Duration checkpointInterval;
+
+    private final AtomicReference<BsonValue> lastResumeToken = new AtomicReference<>();
+
+    private final Semaphore replayPermits;
+
+    private final Duration replayIdleTimeout;
+
+    private final Disposable.Swap subscription = Disposables.swap();
+
+    public ChangeStreamReviewPublisher(ReactiveMongoTemplate reactiveMongoTemplate,
+                                       ReviewBroadcaster reviewBroadcaster,
+                                       ReviewsByMovieCache reviewsByMovieCache,
+                                       @Value("${reviews.stream.checkpoint-interval:5s}") Duration checkpointInterval,
+                                       @Value("${reviews.stream.max-concurrent-replays:16}") int maxConcurrentReplays,
+                                       @Value("${reviews.stream.replay-idle-timeout:1s}") Duration replayIdleTimeout) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reviewBroadcaster = reviewBroadcaster;
+        this.reviewsByMovieCache = reviewsByMovieCache;
+        this.checkpointInterval = checkpointInterval;
+        this.replayPermits = new Semaphore(maxConcurrentReplays);
+        this.replayIdleTimeout = replayIdleTimeout;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Flux<ReviewEvent> liveReviewEventFlux = Flux.defer(() -> watch(lastResumeToken.get()))
+                .doOnNext(reviewEvent -> lastResumeToken.set(toResumeToken(reviewEvent.getId())))
+                .doOnError(ex -> {
+                    if (isHistoryLost(ex)) {
+                        LOGGER.warn("Resume token is no longer in the oplog, the review stream restarts from now");
+                        lastResumeToken.set(null);
+                    }
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(retrySignal -> LOGGER.warn("Review change stream failed, reconnecting: {}",
+                                retrySignal.failure().getMessage())));
+
+        Flux<ReviewEvent> reviewEventFlux = reactiveMongoTemplate.findById(CHECKPOINT_ID, ReviewStreamCheckpoint.class)
+                .doOnNext(checkpoint -> lastResumeToken.set(toResumeToken(checkpoint.getResumeToken())))
+                .onErrorResume(ex -> {
+                    LOGGER.warn("Could not read the review change stream checkpoint: {}", ex.getMessage());
+                    return Mono.empty();
+                })
+                .thenMany(liveReviewEventFlux)
+                .doOnNext(this::invalidateCache)
+                .doOnNext(reviewBroadcaster::publish)
+                .share();
+
+        subscription.update(Disposables.composite(
+                reviewEventFlux.subscribe(),
+                reviewEventFlux.sample(checkpointInterval)
+                        .concatMap(reviewEvent -> saveCheckpoint(reviewEvent.getId()))
+                        .subscribe()
+        ));
+    }
+
+    /**
+     * The events of one client reconnecting after {@code lastEventId}: those it missed, replayed from a change
+     * stream of its own until the position the shared stream had when the client joined it, then the shared
+     * events that follow. The replay also ends once it has been idle for {@code replay-idle-timeout}, as it has
+     * then caught up, or on any error, such as a token the oplog no longer holds. An id that is not before the
+     * current position of the shared stream, or whose replay fails, no longer filters the shared events: the
+     * client gets them all rather than none.
+     *
+     * @param sharedReviewEvents the events of the shared stream, subscribed to before the replay starts
+     */
+    public Flux<ReviewEvent> resumeAfter(String lastEventId, Flux<ReviewEvent> sharedReviewEvents) {
+        return Flux.defer(() -> {
+            // the last event id delivered to this client, resume tokens of one deployment sort in oplog order;
+            // null once it cannot tell the events the client has from those it has not
+            final String sharedId = eventIdOf(lastResumeToken.get());
+            AtomicReference<String> deliveredId = new AtomicReference<>(
+                    sharedId != null && lastEventId.compareTo(sharedId) > 0 ? null : lastEventId);
+            Flux<ReviewEvent> newSharedReviewEvents = sharedReviewEvents
+                    .filter(reviewEvent -> deliveredId.get() == null || reviewEvent.getId().compareTo(deliveredId.get()) > 0);
+            if (!replayPermits.tryAcquire()) {
+                LOGGER.debug("Too many review stream replays, a client resuming after {} joins the shared stream", lastEventId);
+                return newSharedReviewEvents;
+            }
+
+            AtomicReference<String> handoverId = new AtomicReference<>();
+            Flux<ReviewEvent> replayedReviewEvents = watch(toResumeToken(lastEventId))
+                    .takeUntil(reviewEvent -> handoverId.get() != null && reviewEvent.getId().compareTo(handoverId.get()) >= 0)
+                    .timeout(replayIdleTimeout, Flux.empty())
+                    .onErrorResume(ex -> {
+                        LOGGER.debug("Could not replay the review stream after {}: {}", lastEventId, ex.getMessage());
+                        deliveredId.set(null);
+                        return Mono.empty();
+                    })
+                    .doOnNext(reviewEvent -> deliveredId.set(reviewEvent.getId()))
+                    .doFinally(signalType -> replayPermits.release());
+            // the shared events are buffered until the replay ends, and the replay stops where they start
+            Flux<ReviewEvent> handedOverReviewEvents = newSharedReviewEvents
+                    .doOnSubscribe(subscription -> handoverId.set(eventIdOf(lastResumeToken.get())));
+
+            return Flux.mergeSequential(Queues.SMALL_BUFFER_SIZE, replayedReviewEvents, handedOverReviewEvents);
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscription.dispose();
+    }
+
+    private Flux<ReviewEvent> watch(BsonValue resumeToken) {
+        ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+                .returnFullDocumentOnUpdate();
+        if (resumeToken != null) {
+            options.resumeAfter(resumeToken);
+        }
+
+        return reactiveMongoTemplate.changeStream(null, reactiveMongoTemplate.getCollectionName(MovieReview.class),
+                        options.build(), MovieReview.class)
+                .mapNotNull(this::toReviewEvent);
+    }
+
+    // the change stream also reports the writes of the other instances, which could not invalidate this cache
+    private void invalidateCache(ReviewEvent reviewEvent) {
+        MovieReview movieReview = reviewEvent.getReview();
+        if (movieReview.getMoveInfoId() != null) {
+            reviewsByMovieCache.invalidate(movieReview.getMoveInfoId());
+        } else {
+            reviewsByMovieCache.invalidateReview(movieReview.getId());
+        }
+    }
+
+    private ReviewEvent toReviewEvent(ChangeStreamEvent<MovieReview> changeStreamEvent) {
+        ReviewEvent.Type type;
+        MovieReview movieReview = changeStreamEvent.getBody();
+        switch (changeStreamEvent.getOperationType()) {
+            case INSERT -> type = ReviewEvent.Type.CREATED;
+            case UPDATE, REPLACE -> type = ReviewEvent.Type.UPDATED;
+            case DELETE -> {
+                type = ReviewEvent.Type.DELETED;
+                BsonValue id = changeStreamEvent.getRaw().getDocumentKey().get("_id");
+                movieReview = MovieReview.builder()
+                        .id(id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue())
+                        .build();
+            }
+            default -> {
+                return null;
+            }
+        }
+        if (movieReview == null) {
+            // updated document deleted before its full document could be looked up
+            return null;
+        }
+
+        return ReviewEvent.builder()
+                .id(changeStreamEvent.getResumeToken().asDocument().getString("_data").getValue())
+                .type(type)
+                .review(movieReview)
+                .build();
+    }
+
+    private Mono<Void> saveCheckpoint(String resumeToken) {
+        return reactiveMongoTemplate.upsert(Query.query(where("_id").is(CHECKPOINT_ID)),
+                        new Update().set("resumeToken", resumeToken).set("updatedAt", Instant.now()),
+                        ReviewStreamCheckpoint.class)
+                .then()
+                .onErrorResume(ex -> {
+                    LOGGER.warn("Could not checkpoint the review change stream: {}", ex.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Whether the event id could be the {@code _data} of a resume token, the only ids {@link #resumeAfter} orders.
+     */
+    public static boolean isEventId(String eventId) {
+        return RESUME_TOKEN_DATA.matcher(eventId).matches();
+    }
+
+    private static String eventIdOf(BsonValue resumeToken) {
+        return resumeToken == null ? null : resumeToken.asDocument().getString("_data").getValue();
+    }
+
+    private static BsonValue toResumeToken(String eventId) {
+        return eventId == null ? null : new BsonDocument("_data", new BsonString(eventId));
+    }
+
+    private static boolean isHistoryLost(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException mongoCommandException
+                    && mongoCommandException.getErrorCode() == HISTORY_LOST_ERROR_CODE) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
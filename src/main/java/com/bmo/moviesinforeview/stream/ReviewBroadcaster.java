@@ -0,0 +1,205 @@
+package com.bmo.moviesinforeview.stream;
+
+import com.bmo.moviesinforeview.domain.ReviewEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fans review events out to the live stream subscribers. Every subscriber reads through its own bounded
+ * buffer, so a slow client never holds back the publishers or the other subscribers: once its buffer is
+ * full it either loses its oldest pending events or is disconnected, depending on the overflow policy.
+ * Publishing only queues the event for every subscriber; their buffers are drained, and the events encoded and
+ * written, on a worker of their own, so the cost of the fan-out is not charged to the writing request. A subscriber
+ * whose worker falls behind is buffered, and dropped from or disconnected, the same way before the hand-over, so
+ * the shared sink never skips it unnoticed.
+ * <p>
+ * Events come either from the writes of this instance ({@code reviews.stream.source=local}) or from the
+ * change stream of the review collection ({@code reviews.stream.source=change-stream}), which also sees the
+ * writes of every other instance.
+ * <p>
+ * Subscribers, published, dropped and failed events and disconnections are published as {@code reviews.stream.*} meters.
+ */
+@Component
+public class ReviewBroadcaster implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReviewBroadcaster.class);
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DISCONNECT
+    }
+
+    public enum Source {
+        LOCAL,
+        CHANGE_STREAM
+    }
+
+    // emits are serialized by publish(), the sink does not need to detect concurrent ones
+    private final Sinks.Many<ReviewEvent> sink = Sinks.unsafe().many().multicast().directBestEffort();
+
+    // replayed to new subscribers, as the stream always started with the latest review
+    private final AtomicReference<ReviewEvent> latestReviewEvent = new AtomicReference<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedEmitCount = new AtomicLong();
+    private final AtomicLong disconnectedCount = new AtomicLong();
+
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Duration heartbeatInterval;
+    private final Source source;
+    private final Scheduler subscriberScheduler;
+
+    @Autowired
+    public ReviewBroadcaster(@Value("${reviews.stream.buffer-size:256}") int bufferSize,
+                             @Value("${reviews.stream.overflow-policy:drop-oldest}") OverflowPolicy overflowPolicy,
+                             @Value("${reviews.stream.heartbeat-interval:15s}") Duration heartbeatInterval,
+                             @Value("${reviews.stream.source:local}") Source source) {
+        this(bufferSize, overflowPolicy, heartbeatInterval, source, Schedulers.parallel());
+    }
+
+    ReviewBroadcaster(int bufferSize, OverflowPolicy overflowPolicy, Duration heartbeatInterval, Source source,
+                      Scheduler subscriberScheduler) {
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
+        this.heartbeatInterval = heartbeatInterval;
+        this.source = source;
+        this.subscriberScheduler = subscriberScheduler;
+    }
+
+    /**
+     * Publishes a write made by this instance. It is ignored when the events come from the change stream,
+     * which reports the same write to every instance.
+     */
+    public void publishLocal(ReviewEvent reviewEvent) {
+        if (source == Source.LOCAL) {
+            publish(reviewEvent);
+        }
+    }
+
+    public void publish(ReviewEvent reviewEvent) {
+        latestReviewEvent.set(reviewEvent);
+        publishedCount.incrementAndGet();
+
+        // held only while the event is queued for each subscriber, which is all an emit does
+        Sinks.EmitResult emitResult;
+        synchronized (sink) {
+            emitResult = sink.tryEmitNext(reviewEvent);
+        }
+
+        if (emitResult.isFailure() && emitResult != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            failedEmitCount.incrementAndGet();
+            LOGGER.warn("Could not publish {} event of review {} to the live stream: {}",
+                    reviewEvent.getType(), reviewEvent.getReview().getId(), emitResult);
+        }
+    }
+
+    /**
+     * @param moveInfoId when not null, only the events of that movie are delivered
+     */
+    public Flux<ReviewEvent> subscribe(String moveInfoId) {
+        return subscribe(Flux.concat(Mono.justOrEmpty(latestReviewEvent.get()), sharedEvents()), moveInfoId);
+    }
+
+    /**
+     * The events published from now on, without the latest one, unfiltered; up to {@code buffer-size} of them
+     * wait for the subscriber, beyond that the overflow policy applies.
+     */
+    public Flux<ReviewEvent> sharedEvents() {
+        // the direct sink skips a subscriber without demand, the buffer always has some
+        return overflowBuffer(sink.asFlux());
+    }
+
+    /**
+     * Delivers events of another source, such as a change stream replayed for one client, with the same
+     * filtering and buffering as the shared stream.
+     */
+    public Flux<ReviewEvent> subscribe(Flux<ReviewEvent> reviewEventFlux, String moveInfoId) {
+        if (moveInfoId != null) {
+            reviewEventFlux = reviewEventFlux
+                    .filter(reviewEvent -> moveInfoId.equals(reviewEvent.getReview().getMoveInfoId()));
+        }
+
+        // the events are handed over to the worker before the buffer, so overflows are handled there too
+        return overflowBuffer(reviewEventFlux.publishOn(subscriberScheduler, bufferSize))
+                .onErrorResume(Exceptions::isOverflow, ex -> {
+                    disconnectedCount.incrementAndGet();
+                    LOGGER.debug("Disconnecting a live stream subscriber that fell {} events behind", bufferSize);
+                    return Flux.empty();
+                })
+                .doOnSubscribe(subscription -> subscriberCount.incrementAndGet())
+                .doFinally(signalType -> subscriberCount.decrementAndGet());
+    }
+
+    private Flux<ReviewEvent> overflowBuffer(Flux<ReviewEvent> reviewEventFlux) {
+        return reviewEventFlux.onBackpressureBuffer(bufferSize, reviewEvent -> droppedCount.incrementAndGet(),
+                overflowPolicy == OverflowPolicy.DROP_OLDEST ? BufferOverflowStrategy.DROP_OLDEST : BufferOverflowStrategy.ERROR);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("reviews.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Live stream subscribers")
+                .register(registry);
+        Gauge.builder("reviews.stream.sink.subscribers", sink, Sinks.Many::currentSubscriberCount)
+                .description("Subscribers attached to the shared sink")
+                .register(registry);
+        FunctionCounter.builder("reviews.stream.published", publishedCount, AtomicLong::get)
+                .description("Events published to the live stream")
+                .register(registry);
+        FunctionCounter.builder("reviews.stream.dropped", droppedCount, AtomicLong::get)
+                .description("Events dropped from the buffer of a slow subscriber")
+                .register(registry);
+        FunctionCounter.builder("reviews.stream.emit.failed", failedEmitCount, AtomicLong::get)
+                .description("Events that could not be emitted to the sink")
+                .register(registry);
+        FunctionCounter.builder("reviews.stream.disconnected", disconnectedCount, AtomicLong::get)
+                .description("Subscribers disconnected after overflowing a buffer")
+                .register(registry);
+    }
+
+    public Flux<Long> heartbeats() {
+        return Flux.interval(heartbeatInterval, heartbeatInterval);
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedEmitCount() {
+        return failedEmitCount.get();
+    }
+
+    public long getDisconnectedCount() {
+        return disconnectedCount.get();
+    }
+}
@@ -0,0 +1,137 @@
+package com.bmo.moviesinforeview.admission;
+
+import com.bmo.moviesinforeview.exception.ReviewOverloadedException;
+import com.bmo.moviesinforeview.exception.ReviewRateLimitedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.reactive.result.view.ViewResolver;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdmissionControlTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private AdmissionControl admissionControl(AdmissionProperties.Limit client, AdmissionProperties.Limit route) {
+        AdmissionProperties admissionProperties = new AdmissionProperties();
+        admissionProperties.setClient(client);
+        admissionProperties.setRoute(route);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", registry);
+        return new AdmissionControl(admissionProperties, beanFactory.getBeanProvider(MeterRegistry.class));
+    }
+
+    private static ServerRequest request(String clientAddress) {
+        return MockServerRequest.builder()
+                .remoteAddress(new InetSocketAddress(clientAddress, 50000))
+                .build();
+    }
+
+    private static final HandlerFunction<ServerResponse> OK = request -> ServerResponse.ok().build();
+
+    @Test
+    void when_client_exceeds_its_burst_then_reject_only_that_client() {
+        HandlerFilterFunction<ServerResponse, ServerResponse> filter = admissionControl(
+                new AdmissionProperties.Limit(1.0, 2, 0),
+                new AdmissionProperties.Limit(0.0, 0, 0)).forRoute("list");
+
+        StepVerifier.create(filter.filter(request("10.0.0.1"), OK)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(filter.filter(request("10.0.0.1"), OK)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(filter.filter(request("10.0.0.1"), OK))
+                .verifyErrorSatisfies(ex -> assertEquals(Duration.ofSeconds(1), ((ReviewRateLimitedException) ex).getRetryAfter()));
+        StepVerifier.create(filter.filter(request("10.0.0.2"), OK)).expectNextCount(1).verifyComplete();
+
+        assertEquals(1, registry.get("reviews.admission.rejected").tag("route", "list").tag("reason", "client-rate")
+                .counter().count());
+        assertEquals(3, registry.get("reviews.admission.admitted").tag("route", "list").counter().count());
+    }
+
+    @Test
+    void when_client_limit_is_not_configured_then_clients_are_not_rate_limited() {
+        AdmissionProperties admissionProperties = new AdmissionProperties();
+        admissionProperties.setRoute(new AdmissionProperties.Limit(0.0, 0, 0));
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", registry);
+        HandlerFilterFunction<ServerResponse, ServerResponse> filter = new AdmissionControl(admissionProperties,
+                beanFactory.getBeanProvider(MeterRegistry.class)).forRoute("list");
+
+        for (int i = 0; i < 1000; i++) {
+            StepVerifier.create(filter.filter(request("10.0.0.1"), OK)).expectNextCount(1).verifyComplete();
+        }
+    }
+
+    @Test
+    void when_route_sets_only_its_rate_then_its_burst_is_one_second_of_it() {
+        AdmissionProperties admissionProperties = new AdmissionProperties();
+        admissionProperties.getRoutes().put("stream", new AdmissionProperties.Limit(50.0, null, null));
+        admissionProperties.getRoutes().put("add", new AdmissionProperties.Limit(null, null, 8));
+
+        assertEquals(new AdmissionProperties.Limit(50.0, 50, 256), admissionProperties.limitOf("stream"));
+        assertEquals(new AdmissionProperties.Limit(2000.0, 4000, 8), admissionProperties.limitOf("add"));
+    }
+
+    @Test
+    void when_route_is_at_max_in_flight_then_reject_until_a_response_is_written() {
+        HandlerFilterFunction<ServerResponse, ServerResponse> filter = admissionControl(
+                new AdmissionProperties.Limit(0.0, 0, 0),
+                new AdmissionProperties.Limit(0.0, 0, 1)).forRoute("add");
+
+        ServerResponse inFlightResponse = filter.filter(request("10.0.0.1"), OK).block();
+        assertEquals(1, registry.get("reviews.admission.in-flight").tag("route", "add").gauge().value());
+
+        StepVerifier.create(filter.filter(request("10.0.0.2"), OK))
+                .expectError(ReviewOverloadedException.class)
+                .verify();
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/reviews"));
+        inFlightResponse.writeTo(exchange, new ServerResponse.Context() {
+            @Override
+            public List<HttpMessageWriter<?>> messageWriters() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public List<ViewResolver> viewResolvers() {
+                return Collections.emptyList();
+            }
+        }).block();
+
+        assertEquals(0, registry.get("reviews.admission.in-flight").tag("route", "add").gauge().value());
+        StepVerifier.create(filter.filter(request("10.0.0.2"), OK)).expectNextCount(1).verifyComplete();
+    }
+
+    @Test
+    void when_handler_fails_then_release_the_in_flight_slot() {
+        HandlerFilterFunction<ServerResponse, ServerResponse> filter = admissionControl(
+                new AdmissionProperties.Limit(0.0, 0, 0),
+                new AdmissionProperties.Limit(0.0, 0, 1)).forRoute("add");
+        Sinks.One<ServerResponse> never = Sinks.one();
+
+        StepVerifier.create(filter.filter(request("10.0.0.1"), request -> Mono.error(new IllegalStateException("down"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(filter.filter(request("10.0.0.1"), request -> never.asMono()))
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, registry.get("reviews.admission.in-flight").tag("route", "add").gauge().value());
+    }
+}
@@ -0,0 +1,79 @@
+package com.bmo.moviesinforeview.cache;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReviewsByMovieCacheTest {
+
+    private final ReviewsByMovieCache reviewsByMovieCache = new ReviewsByMovieCache(100, Duration.ofMinutes(1),
+            new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private List<MovieReview> get(String moveInfoId, int limit, String changeMarker) {
+        return reviewsByMovieCache.get(moveInfoId, limit, changeMarker, () -> {
+            loads.incrementAndGet();
+            return Mono.just(List.of(MovieReview.builder().id("review-of-" + moveInfoId).moveInfoId(moveInfoId).build()));
+        }).block();
+    }
+
+    @Test
+    void when_movie_is_invalidated_then_only_its_pages_are_reloaded() {
+        get("1SW", 10, "m1");
+        get("1SW", 100, "m1");
+        get("2SW", 10, "m1");
+        get("1SW", 10, "m1");
+        assertEquals(3, loads.get());
+        assertEquals(1, reviewsByMovieCache.stats().hitCount());
+
+        reviewsByMovieCache.invalidate("1SW");
+        get("1SW", 10, "m1");
+        get("1SW", 100, "m1");
+        get("2SW", 10, "m1");
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void when_review_is_invalidated_by_id_then_pages_of_its_movie_are_reloaded() {
+        get("1SW", 10, "m1");
+        get("2SW", 10, "m1");
+
+        reviewsByMovieCache.invalidateReview("review-of-1SW");
+        reviewsByMovieCache.invalidateReview("unknown");
+        get("1SW", 10, "m1");
+        get("2SW", 10, "m1");
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void when_change_marker_moves_then_pages_read_before_are_dropped() {
+        get("1SW", 10, "m1");
+        get("1SW", 10, "m2");
+        get("1SW", 10, "m2");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void when_pages_outweigh_the_cache_then_movies_are_evicted_by_their_reviews() {
+        for (int movie = 0; movie < 5; movie++) {
+            final String moveInfoId = movie + "SW";
+            reviewsByMovieCache.get(moveInfoId, 40, "m1", () -> Mono.just(IntStream.range(0, 40)
+                    .mapToObj(i -> MovieReview.builder().id(moveInfoId + "-" + i).moveInfoId(moveInfoId).build())
+                    .toList())).block();
+        }
+
+        // two movies of 40 reviews, plus one for each entry, fit in 100
+        assertEquals(82, reviewsByMovieCache.weightedSize());
+        assertEquals(3, reviewsByMovieCache.stats().evictionCount());
+    }
+}
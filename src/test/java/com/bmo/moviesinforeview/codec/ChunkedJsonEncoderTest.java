@@ -0,0 +1,63 @@
+package com.bmo.moviesinforeview.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedJsonEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ChunkedJsonEncoder chunkedJsonEncoder = new ChunkedJsonEncoder(objectMapper, DataSize.ofBytes(64));
+
+    @Test
+    void when_encoding_array_then_write_valid_json_in_bounded_chunks() throws Exception {
+        List<Map<String, Object>> values = IntStream.range(0, 20)
+                .<Map<String, Object>>mapToObj(i -> Map.of("id", String.valueOf(i), "rating", i))
+                .toList();
+
+        List<String> chunks = chunks(chunkedJsonEncoder.encodeJsonArray(Flux.fromIterable(values), DefaultDataBufferFactory.sharedInstance));
+
+        assertTrue(chunks.size() > 1);
+        // a chunk is sent once it holds chunk-size bytes, so it overshoots by less than one value
+        chunks.forEach(chunk -> assertTrue(chunk.length() < 64 + 32, chunk));
+        assertEquals(objectMapper.writeValueAsString(values), String.join("", chunks));
+    }
+
+    @Test
+    void when_encoding_nothing_then_write_empty_array_or_empty_ndjson() {
+        assertEquals(List.of("[]"), chunks(chunkedJsonEncoder.encodeJsonArray(Flux.empty(), DefaultDataBufferFactory.sharedInstance)));
+        assertEquals(List.of(), chunks(chunkedJsonEncoder.encodeNdjson(Flux.empty(), DefaultDataBufferFactory.sharedInstance)));
+    }
+
+    @Test
+    void when_encoding_ndjson_then_end_every_value_with_a_new_line() {
+        String ndjson = String.join("", chunks(chunkedJsonEncoder.encodeNdjson(
+                Flux.just(Map.of("id", "1"), Map.of("id", "2")), DefaultDataBufferFactory.sharedInstance)));
+
+        assertEquals("{\"id\":\"1\"}\n{\"id\":\"2\"}\n", ndjson);
+    }
+
+    private static List<String> chunks(Flux<DataBuffer> dataBuffers) {
+        return dataBuffers
+                .map(dataBuffer -> {
+                    String chunk = dataBuffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(dataBuffer);
+                    return chunk;
+                })
+                .collectList()
+                .block();
+    }
+}
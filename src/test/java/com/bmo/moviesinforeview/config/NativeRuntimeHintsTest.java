@@ -0,0 +1,25 @@
+package com.bmo.moviesinforeview.config;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeRuntimeHintsTest {
+
+    @Test
+    void when_registered_then_domain_types_can_be_bound_validated_and_mapped() throws NoSuchMethodException, NoSuchFieldException {
+        RuntimeHints hints = new RuntimeHints();
+        new NativeRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        for (Class<?> domainType : NativeRuntimeHints.DOMAIN_TYPES) {
+            assertTrue(RuntimeHintsPredicates.reflection().onType(domainType).test(hints), domainType.getName());
+        }
+        assertTrue(RuntimeHintsPredicates.reflection().onConstructor(MovieReview.class.getDeclaredConstructor()).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(MovieReview.class.getMethod("getRating")).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(MovieReview.class.getMethod("setComment", String.class)).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onField(MovieReview.class.getDeclaredField("moveInfoId")).test(hints));
+    }
+}
@@ -0,0 +1,56 @@
+package com.bmo.moviesinforeview.config;
+
+import com.bmo.moviesinforeview.repository.MovieReviewRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RepositoryMetricsInterceptorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private MovieReviewRepository timed(MovieReviewRepository repository) {
+        ProxyFactory proxyFactory = new ProxyFactory(repository);
+        proxyFactory.addInterface(MovieReviewRepository.class);
+        proxyFactory.addAdvice(new RepositoryMetricsInterceptor(registry, MovieReviewRepository.class));
+        return (MovieReviewRepository) proxyFactory.getProxy();
+    }
+
+    @Test
+    void when_mono_is_subscribed_then_time_the_call() {
+        MovieReviewRepository repository = mock(MovieReviewRepository.class);
+        when(repository.findById(any(String.class))).thenReturn(Mono.empty());
+
+        Mono<?> result = timed(repository).findById("1");
+        assertEquals(0, registry.find(RepositoryMetricsInterceptor.METRIC_NAME).timers().size());
+
+        StepVerifier.create(result).verifyComplete();
+
+        assertEquals(1, registry.get(RepositoryMetricsInterceptor.METRIC_NAME)
+                .tag("repository", "MovieReviewRepository")
+                .tag("method", "findById")
+                .tag("state", "SUCCESS")
+                .timer().count());
+    }
+
+    @Test
+    void when_flux_fails_then_time_the_call_as_error() {
+        MovieReviewRepository repository = mock(MovieReviewRepository.class);
+        when(repository.findReviewsByMoveInfoId("1SW")).thenReturn(Flux.error(new IllegalStateException("down")));
+
+        StepVerifier.create(timed(repository).findReviewsByMoveInfoId("1SW")).verifyError(IllegalStateException.class);
+
+        assertEquals(1, registry.get(RepositoryMetricsInterceptor.METRIC_NAME)
+                .tag("method", "findReviewsByMoveInfoId")
+                .tag("state", "ERROR")
+                .timer().count());
+    }
+}
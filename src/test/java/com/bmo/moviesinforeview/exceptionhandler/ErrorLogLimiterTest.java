@@ -0,0 +1,26 @@
+package com.bmo.moviesinforeview.exceptionhandler;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ErrorLogLimiterTest {
+
+    @Test
+    void when_limit_is_reached_then_suppress_until_next_interval() throws InterruptedException {
+        ErrorLogLimiter errorLogLimiter = new ErrorLogLimiter(2, Duration.ofMillis(200));
+
+        assertEquals(0, errorLogLimiter.tryAcquire(IllegalStateException.class));
+        assertEquals(0, errorLogLimiter.tryAcquire(IllegalStateException.class));
+        assertEquals(ErrorLogLimiter.SUPPRESSED, errorLogLimiter.tryAcquire(IllegalStateException.class));
+        assertEquals(ErrorLogLimiter.SUPPRESSED, errorLogLimiter.tryAcquire(IllegalStateException.class));
+
+        // other exception types have their own budget
+        assertEquals(0, errorLogLimiter.tryAcquire(IllegalArgumentException.class));
+
+        Thread.sleep(250);
+        assertEquals(2, errorLogLimiter.tryAcquire(IllegalStateException.class));
+    }
+}
@@ -0,0 +1,56 @@
+package com.bmo.moviesinforeview.exceptionhandler;
+
+import com.bmo.moviesinforeview.exception.ReviewDataException;
+import com.bmo.moviesinforeview.exception.ReviewNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.MethodNotAllowedException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GlobalErrorHandlerTest {
+
+    private final GlobalErrorHandler globalErrorHandler = new GlobalErrorHandler(Jackson2ObjectMapperBuilder.json().build(),
+            100, 10, Duration.ofMinutes(1));
+
+    private String handle(Throwable ex) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/reviews"));
+        StepVerifier.create(globalErrorHandler.handle(exchange, ex)).verifyComplete();
+        return exchange.getResponse().getBodyAsString().block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void when_detail_quotes_the_request_then_encode_it_without_caching() {
+        for (int i = 0; i < 10; i++) {
+            String body = handle(new MethodNotAllowedException("METHOD" + i, List.of(HttpMethod.GET)));
+            assertTrue(body.contains("METHOD" + i), body);
+            body = handle(new ReviewDataException("fields: unknown field field" + i, true));
+            assertTrue(body.contains("unknown field field" + i), body);
+        }
+
+        assertEquals(0, globalErrorHandler.cachedErrorBodies());
+    }
+
+    @Test
+    void when_detail_is_fixed_then_cache_its_body() {
+        for (int i = 0; i < 10; i++) {
+            handle(new ReviewNotFoundException("Movie Review Not found"));
+            handle(new ReviewDataException("q: search text must not be blank"));
+            handle(new ResponseStatusException(HttpStatus.NOT_FOUND));
+            handle(new IllegalStateException("connection " + i + " reset"));
+        }
+
+        // the server error is answered with its reason phrase, whatever its message
+        assertEquals(4, globalErrorHandler.cachedErrorBodies());
+    }
+}
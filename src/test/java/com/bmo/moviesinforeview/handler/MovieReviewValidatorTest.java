@@ -0,0 +1,51 @@
+package com.bmo.moviesinforeview.handler;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MovieReviewValidatorTest {
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private final MovieReviewValidator movieReviewValidator = new MovieReviewValidator(validator, 10);
+
+    @Test
+    void when_constraints_fail_then_same_errors_as_bean_validation() {
+        List<MovieReview> movieReviews = List.of(
+                MovieReview.builder().moveInfoId("1SW").comment("Nice").rating(0.0).build(),
+                MovieReview.builder().moveInfoId(null).comment("Nice").rating(5.0).build(),
+                MovieReview.builder().moveInfoId("1SW").comment(null).rating(-0.5).build(),
+                MovieReview.builder().moveInfoId(null).comment("Nice").rating(-10.0).build(),
+                MovieReview.builder().moveInfoId("1SW").comment("Nice").rating(Double.NaN).build());
+
+        for (MovieReview movieReview : movieReviews) {
+            assertEquals(beanValidationErrors(movieReview), movieReviewValidator.findErrors(movieReview), movieReview.toString());
+        }
+    }
+
+    @Test
+    void when_comment_is_too_long_then_error_sorted_with_the_others() {
+        MovieReview movieReview = MovieReview.builder().moveInfoId(null).comment("Nice movie!").rating(1.0).build();
+
+        assertEquals(Optional.of("comment.length: comment must be at most 10 characters, rating.move: value must not be null"),
+                movieReviewValidator.findErrors(movieReview));
+        assertEquals(6 * 10 + 1024, movieReviewValidator.getMaxBodyBytes());
+    }
+
+    private Optional<String> beanValidationErrors(MovieReview movieReview) {
+        return Optional.of(validator.validate(movieReview).stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(", ")))
+                .filter(errors -> !errors.isEmpty());
+    }
+}
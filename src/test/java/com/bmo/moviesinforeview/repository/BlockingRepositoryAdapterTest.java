@@ -0,0 +1,61 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BlockingRepositoryAdapterTest {
+
+    private final BlockingMovieReviewRepository blockingRepository = mock(BlockingMovieReviewRepository.class);
+
+    private final MovieReviewRepository repository = BlockingRepositoryAdapter.create(MovieReviewRepository.class,
+            BlockingMovieReviewRepository.class, blockingRepository, Schedulers.boundedElastic());
+
+    @Test
+    void when_blocking_method_returns_list_then_emit_its_elements_off_the_caller_thread() {
+        MovieReview movieReview = MovieReview.builder().id("1").moveInfoId("1SW").rating(9.0).build();
+        Thread caller = Thread.currentThread();
+        when(blockingRepository.findAllByOrderByIdAsc(Pageable.ofSize(2))).thenAnswer(invocation -> {
+            assertTrue(Thread.currentThread() != caller);
+            return List.of(movieReview);
+        });
+
+        StepVerifier.create(repository.findAllByOrderByIdAsc(Pageable.ofSize(2)))
+                .expectNext(movieReview)
+                .verifyComplete();
+    }
+
+    @Test
+    void when_blocking_method_returns_empty_optional_or_null_then_complete_empty() {
+        when(blockingRepository.findById("1")).thenReturn(Optional.empty());
+        when(blockingRepository.findAndRemoveById("1", null)).thenReturn(null);
+        when(blockingRepository.count()).thenReturn(3L);
+
+        StepVerifier.create(repository.findById("1")).verifyComplete();
+        StepVerifier.create(repository.findAndRemoveById("1", null)).verifyComplete();
+        StepVerifier.create(repository.count()).expectNext(3L).verifyComplete();
+    }
+
+    @Test
+    void when_blocking_method_fails_then_emit_its_exception() {
+        when(blockingRepository.existsById("1")).thenThrow(new IllegalStateException("down"));
+
+        StepVerifier.create(repository.existsById("1")).verifyError(IllegalStateException.class);
+    }
+
+    @Test
+    void when_method_takes_a_publisher_then_unsupported() {
+        assertThrows(UnsupportedOperationException.class, () -> repository.findById(Mono.just("1")));
+    }
+}
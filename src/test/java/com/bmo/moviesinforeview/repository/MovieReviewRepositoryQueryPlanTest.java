@@ -0,0 +1,255 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.config.MongoIndexConfig;
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Calls every {@link MovieReviewRepository} query against the local mongod, captures the command the repository
+ * sent and fails when explain() of it picks a collection scan, so the plans are those of the queries the service
+ * actually builds. Run it alone with {@code ./gradlew queryPlanTest}.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Tag("query-plan")
+class MovieReviewRepositoryQueryPlanTest {
+
+    // the commands the repositories read with
+    private static final Set<String> QUERY_COMMANDS = Set.of("find", "aggregate", "findAndModify");
+
+    @TestConfiguration
+    static class CommandCaptureConfig {
+
+        @Bean
+        SentCommands sentCommands() {
+            return new SentCommands();
+        }
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer commandCapture(SentCommands sentCommands) {
+            return builder -> builder.addCommandListener(sentCommands);
+        }
+    }
+
+    static class SentCommands implements CommandListener {
+
+        private final List<BsonDocument> commands = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            if (QUERY_COMMANDS.contains(event.getCommandName())) {
+                // the session and cluster fields the driver adds are not accepted inside an explain
+                BsonDocument command = new BsonDocument();
+                event.getCommand().forEach((name, value) -> {
+                    if (!name.startsWith("$") && !name.equals("lsid") && !name.equals("txnNumber")) {
+                        command.append(name, value);
+                    }
+                });
+                commands.add(command.clone());
+            }
+        }
+
+        void clear() {
+            commands.clear();
+        }
+
+        BsonDocument last(String collectionName) {
+            for (int i = commands.size() - 1; i >= 0; i--) {
+                BsonDocument command = commands.get(i);
+                if (command.get(command.getFirstKey()).equals(new BsonString(collectionName))) {
+                    return command;
+                }
+            }
+            throw new AssertionError("no query sent to " + collectionName);
+        }
+    }
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private MongoIndexConfig mongoIndexConfig;
+
+    @Autowired
+    private MovieReviewRepository repository;
+
+    @Autowired
+    private MovieReviewRollupRepository rollupRepository;
+
+    @Autowired
+    private SentCommands sentCommands;
+
+    private List<MovieReview> movieReviews;
+
+    @BeforeEach
+    void setUp() {
+        movieReviews = repository.saveAll(List.of(
+                MovieReview.builder().moveInfoId("1SW").comment("Great Movie").rating(9.0).build(),
+                MovieReview.builder().moveInfoId("2SW").comment("Good Movie").rating(8.0).build()
+        )).collectList().block();
+        mongoIndexConfig.ensureIndexes().blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll().block();
+    }
+
+    @Test
+    void findReviewsByMoveInfoId_uses_an_index() {
+        assertNoCollectionScan("findReviewsByMoveInfoId", repository.findReviewsByMoveInfoId("1SW"));
+    }
+
+    @Test
+    void findAllByOrderByIdAsc_uses_an_index() {
+        assertNoCollectionScan("findAllByOrderByIdAsc", repository.findAllByOrderByIdAsc(PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void findByIdGreaterThanOrderByIdAsc_uses_an_index() {
+        assertNoCollectionScan("findByIdGreaterThanOrderByIdAsc",
+                repository.findByIdGreaterThanOrderByIdAsc(new ObjectId().toHexString(), PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void findReviewsByMoveInfoIdOrderByIdAsc_uses_an_index() {
+        assertNoCollectionScan("findReviewsByMoveInfoIdOrderByIdAsc",
+                repository.findReviewsByMoveInfoIdOrderByIdAsc("1SW", PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void findReviewsByMoveInfoIdAndIdGreaterThanOrderByIdAsc_uses_an_index() {
+        assertNoCollectionScan("findReviewsByMoveInfoIdAndIdGreaterThanOrderByIdAsc",
+                repository.findReviewsByMoveInfoIdAndIdGreaterThanOrderByIdAsc("1SW", new ObjectId().toHexString(),
+                        PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void findReviewsByMoveInfoId_by_rating_reads_the_index_in_order() {
+        Document winningPlan = assertNoCollectionScan("findReviewsByMoveInfoId(sort=rating)",
+                repository.findReviewsByMoveInfoId("1SW", PageRequest.of(0, 10,
+                        Sort.by(Sort.Direction.DESC, "rating").and(Sort.by(Sort.Direction.ASC, "id")))));
+        assertFalse(containsStage(winningPlan, "SORT"), "top-N by rating sorts in memory: " + winningPlan.toJson());
+    }
+
+    @Test
+    void findPageWithFields_uses_an_index() {
+        List<String> fields = List.of("id", "moveInfoId", "rating");
+        Sort byId = Sort.by(Sort.Direction.ASC, "id");
+        assertNoCollectionScan("findPageWithFields(after)",
+                repository.findPageWithFields(null, new ObjectId().toHexString(), byId, 11, fields));
+        assertNoCollectionScan("findPageWithFields(moveInfoId, after)",
+                repository.findPageWithFields("1SW", new ObjectId().toHexString(), byId, 11, fields));
+
+        Document winningPlan = assertNoCollectionScan("findPageWithFields(moveInfoId, sort=rating)",
+                repository.findPageWithFields("1SW", null,
+                        Sort.by(Sort.Direction.DESC, "rating").and(Sort.by(Sort.Direction.ASC, "id")), 10, fields));
+        assertFalse(containsStage(winningPlan, "SORT"), "top-N by rating sorts in memory: " + winningPlan.toJson());
+    }
+
+    @Test
+    void updateCommentAndRating_uses_an_index() {
+        MovieReview movieReview = movieReviews.get(0);
+        assertNoCollectionScan("updateCommentAndRating",
+                repository.updateCommentAndRating(movieReview.getId(), "Fine Movie", 7.0, movieReview.getVersion(), Instant.now()));
+    }
+
+    @Test
+    void findAndRemoveById_uses_an_index() {
+        MovieReview movieReview = movieReviews.get(0);
+        assertNoCollectionScan("findAndRemoveById", repository.findAndRemoveById(movieReview.getId(), movieReview.getVersion()));
+    }
+
+    @Test
+    void searchComments_reads_the_text_index() {
+        Document explain = explainSent(MovieReview.class,
+                repository.searchComments("great", "1SW", 1.0, new ObjectId().toHexString(), 10));
+
+        assertFalse(containsStage(explain, "COLLSCAN"), "searchComments falls back to a collection scan: " + explain.toJson());
+        assertTrue(containsStage(explain, "TEXT_MATCH"), "searchComments does not use the text index: " + explain.toJson());
+    }
+
+    @Test
+    void findFirstReviewsOfMovies_reads_the_index_of_every_movie() {
+        Document explain = explainSent(MovieReview.class, repository.findFirstReviewsOfMovies(List.of("1SW", "2SW"), 10, null));
+
+        assertFalse(containsStage(explain, "COLLSCAN"), "findFirstReviewsOfMovies falls back to a collection scan: " + explain.toJson());
+    }
+
+    @Test
+    void rollups_of_a_movie_in_a_range_use_an_index() {
+        Document explain = explainSent(MovieReviewRollup.class,
+                rollupRepository.findByMoveInfoIdAndBucketAndStartGreaterThanEqualAndStartLessThanOrderByStartAsc(
+                        "1SW", MovieReviewRollup.Bucket.DAY, Instant.EPOCH, Instant.now()));
+
+        Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        assertFalse(containsStage(winningPlan, "COLLSCAN"), "rollups fall back to a collection scan: " + winningPlan.toJson());
+        assertFalse(containsStage(winningPlan, "SORT"), "rollups are sorted in memory: " + winningPlan.toJson());
+    }
+
+    private Document assertNoCollectionScan(String repositoryMethod, Publisher<?> query) {
+        Document explain = explainSent(MovieReview.class, query);
+
+        Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        assertFalse(containsStage(winningPlan, "COLLSCAN"),
+                repositoryMethod + " falls back to a collection scan: " + winningPlan.toJson());
+        return winningPlan;
+    }
+
+    /**
+     * Runs the query and explains the command it sent to the collection of the entity.
+     */
+    private Document explainSent(Class<?> entityClass, Publisher<?> query) {
+        sentCommands.clear();
+        Flux.from(query).then().block();
+        BsonDocument command = sentCommands.last(reactiveMongoTemplate.getCollectionName(entityClass));
+
+        return reactiveMongoTemplate.getMongoDatabase()
+                .flatMap(database -> Mono.from(database.runCommand(
+                        new BsonDocument("explain", command).append("verbosity", new BsonString("queryPlanner")))))
+                .block();
+    }
+
+    private boolean containsStage(Object planNode, String stage) {
+        if (planNode instanceof Document document) {
+            if (stage.equals(document.get("stage"))) {
+                return true;
+            }
+            return document.values().stream().anyMatch(value -> containsStage(value, stage));
+        }
+        if (planNode instanceof List<?> children) {
+            return children.stream().anyMatch(child -> containsStage(child, stage));
+        }
+        return false;
+    }
+}
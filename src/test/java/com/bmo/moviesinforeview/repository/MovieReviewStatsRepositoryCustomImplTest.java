@@ -0,0 +1,91 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MovieReviewStatsRepositoryCustomImplTest {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    private final MovieReviewStatsRepositoryCustomImpl statsRepository =
+            new MovieReviewStatsRepositoryCustomImpl(reactiveMongoTemplate);
+
+    private static MovieReviewStats stats(long version) {
+        return MovieReviewStats.builder().moveInfoId("1SW").count(2).sum(10.0).min(1.0).max(9.0).version(version).build();
+    }
+
+    @BeforeEach
+    void setUp() {
+        ReactiveBulkOperations bulkOperations = mock(ReactiveBulkOperations.class);
+        when(bulkOperations.execute()).thenReturn(Mono.just(mock(BulkWriteResult.class)));
+        when(reactiveMongoTemplate.bulkOps(any(), eq(MovieReviewRollup.class))).thenReturn(bulkOperations);
+        when(reactiveMongoTemplate.findAndModify(isA(Query.class), isA(Update.class), isA(FindAndModifyOptions.class),
+                eq(MovieReviewStats.class))).thenReturn(Mono.just(stats(4)));
+    }
+
+    @Test
+    void when_stats_change_during_the_recompute_then_read_the_bounds_again() {
+        when(reactiveMongoTemplate.findOne(isA(Query.class), eq(MovieReviewStats.class)))
+                .thenReturn(Mono.just(stats(4)))
+                .thenReturn(Mono.just(stats(5)));
+        when(reactiveMongoTemplate.aggregate(isA(Aggregation.class), eq(MovieReview.class), eq(Document.class)))
+                .thenReturn(Flux.just(new Document("min", 5.0).append("max", 9.0)))
+                .thenReturn(Flux.just(new Document("min", 2.0).append("max", 9.0)));
+        when(reactiveMongoTemplate.updateFirst(isA(Query.class), isA(Update.class), eq(MovieReviewStats.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        StepVerifier.create(statsRepository.recordDeleted(MovieReview.builder().moveInfoId("1SW").rating(1.0).build()))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(reactiveMongoTemplate, times(2))
+                .updateFirst(queryCaptor.capture(), updateCaptor.capture(), eq(MovieReviewStats.class));
+        List<Query> queries = queryCaptor.getAllValues();
+        assertEquals(4L, queries.get(0).getQueryObject().get("version"));
+        assertEquals(5L, queries.get(1).getQueryObject().get("version"));
+        assertEquals(2.0, updateCaptor.getAllValues().get(1).getUpdateObject().get("$set", Document.class).get("min"));
+    }
+
+    @Test
+    void when_stats_keep_changing_then_give_up_without_failing_the_write() {
+        when(reactiveMongoTemplate.findOne(isA(Query.class), eq(MovieReviewStats.class))).thenReturn(Mono.just(stats(4)));
+        when(reactiveMongoTemplate.aggregate(isA(Aggregation.class), eq(MovieReview.class), eq(Document.class)))
+                .thenReturn(Flux.just(new Document("min", 5.0).append("max", 9.0)));
+        when(reactiveMongoTemplate.updateFirst(isA(Query.class), isA(Update.class), eq(MovieReviewStats.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)));
+
+        StepVerifier.create(statsRepository.recordDeleted(MovieReview.builder().moveInfoId("1SW").rating(1.0).build()))
+                .verifyComplete();
+
+        verify(reactiveMongoTemplate, times(5)).updateFirst(isA(Query.class), isA(Update.class), eq(MovieReviewStats.class));
+    }
+}
@@ -0,0 +1,160 @@
+package com.bmo.moviesinforeview.repository;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.exception.ReviewOverloadedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewWriteBehindTest {
+
+    private final MovieReviewRepository repository = mock(MovieReviewRepository.class);
+
+    private final MovieReviewStatsRepository statsRepository = mock(MovieReviewStatsRepository.class);
+
+    @Captor
+    private ArgumentCaptor<List<MovieReview>> insertedCaptor;
+
+    private AutoCloseable mocks;
+
+    private final ReviewWriteBehind reviewWriteBehind = new ReviewWriteBehind(repository, statsRepository,
+            new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class), 3, Duration.ofMillis(50), 1, 100, Duration.ofSeconds(1));
+
+    private static MovieReview review(String comment) {
+        return MovieReview.builder().moveInfoId("1SW").comment(comment).rating(5.0).build();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        reviewWriteBehind.stop();
+        mocks.close();
+    }
+
+    @Test
+    void when_reviews_arrive_together_then_insert_them_in_one_batch_and_answer_each() {
+        when(repository.insertUnordered(anyList())).thenReturn(Mono.just(Map.of(1, "E11000 duplicate key error")));
+        when(statsRepository.recordAdded(anyList())).thenReturn(Mono.empty());
+
+        Mono<MovieReview> first = reviewWriteBehind.insert(review("first")).cache();
+        Mono<MovieReview> second = reviewWriteBehind.insert(review("second")).cache();
+        Mono<MovieReview> third = reviewWriteBehind.insert(review("third")).cache();
+        Flux.merge(first, second, third).onErrorContinue((ex, value) -> { }).blockLast(Duration.ofSeconds(5));
+
+        StepVerifier.create(first)
+                .assertNext(movieReview -> {
+                    assertEquals("first", movieReview.getComment());
+                    assertNotNull(movieReview.getId());
+                    assertEquals(0L, movieReview.getVersion());
+                })
+                .verifyComplete();
+        StepVerifier.create(second)
+                .verifyErrorMessage("E11000 duplicate key error");
+        StepVerifier.create(third)
+                .assertNext(movieReview -> assertEquals("third", movieReview.getComment()))
+                .verifyComplete();
+
+        verify(repository, times(1)).insertUnordered(anyList());
+        verify(statsRepository).recordAdded(insertedCaptor.capture());
+        assertEquals(List.of("first", "third"), insertedCaptor.getValue().stream().map(MovieReview::getComment).toList());
+    }
+
+    @Test
+    void when_batch_is_not_full_then_flush_after_max_linger() {
+        when(repository.insertUnordered(anyList())).thenReturn(Mono.just(Map.of()));
+        when(statsRepository.recordAdded(anyList())).thenReturn(Mono.empty());
+
+        StepVerifier.create(reviewWriteBehind.insert(review("alone")))
+                .expectNextMatches(movieReview -> movieReview.getComment().equals("alone"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void when_flushes_are_slower_than_max_linger_then_every_review_is_still_answered() {
+        when(repository.insertUnordered(anyList())).thenAnswer(invocation -> Mono.just(Map.<Integer, String>of())
+                .delayElement(Duration.ofMillis(200)));
+        when(statsRepository.recordAdded(anyList())).thenReturn(Mono.empty());
+        ReviewWriteBehind slowWriteBehind = new ReviewWriteBehind(repository, statsRepository,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class), 10, Duration.ofMillis(5), 4, 1000, Duration.ofSeconds(1));
+
+        try {
+            // reviews trickle in, so max-linger expires while every flush is still busy
+            StepVerifier.create(Flux.interval(Duration.ofMillis(2))
+                            .take(100)
+                            .flatMap(i -> slowWriteBehind.insert(review("review " + i))))
+                    .expectNextCount(100)
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(10));
+            // the pipeline is still running after the overflow-prone period
+            StepVerifier.create(slowWriteBehind.insert(review("later")))
+                    .expectNextCount(1)
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(5));
+        } finally {
+            slowWriteBehind.stop();
+        }
+    }
+
+    @Test
+    void when_too_many_reviews_are_pending_then_refuse_more() {
+        when(repository.insertUnordered(anyList())).thenReturn(Mono.never());
+
+        for (int i = 0; i < 100; i++) {
+            reviewWriteBehind.insert(review("pending " + i)).subscribe(movieReview -> { }, ex -> { });
+        }
+
+        StepVerifier.create(reviewWriteBehind.insert(review("one too many")))
+                .expectError(ReviewOverloadedException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void when_stopped_then_pending_and_later_reviews_fail() {
+        when(repository.insertUnordered(anyList())).thenReturn(Mono.never());
+        Mono<MovieReview> pending = reviewWriteBehind.insert(review("pending")).cache();
+        pending.subscribe(movieReview -> { }, ex -> { });
+
+        reviewWriteBehind.stop();
+
+        StepVerifier.create(pending)
+                .expectErrorMessage("Review write-behind is stopped")
+                .verify(Duration.ofSeconds(5));
+        StepVerifier.create(reviewWriteBehind.insert(review("later")))
+                .expectErrorMessage("Review write-behind is stopped")
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void when_bulk_insert_fails_then_fail_every_review_of_the_batch() {
+        when(repository.insertUnordered(anyList())).thenReturn(Mono.error(new IllegalStateException("mongo down")));
+
+        StepVerifier.create(reviewWriteBehind.insert(review("lost")))
+                .expectErrorMessage("mongo down")
+                .verify(Duration.ofSeconds(5));
+    }
+}
@@ -1,16 +1,28 @@
 package com.bmo.moviesinforeview.router;
 
+import com.bmo.moviesinforeview.config.MongoIndexConfig;
+import com.bmo.moviesinforeview.domain.BatchItemResult;
 import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.ReviewSearchHit;
+import com.bmo.moviesinforeview.domain.ReviewsByMoviesRequest;
+import com.bmo.moviesinforeview.handler.ReviewHandler;
 import com.bmo.moviesinforeview.repository.MovieReviewRepository;
+import com.bmo.moviesinforeview.repository.MovieReviewRollupRepository;
+import com.bmo.moviesinforeview.repository.MovieReviewStatsRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,6 +38,15 @@ class ReviewRouterIntegrationTest {
     @Autowired
     private MovieReviewRepository repository;
 
+    @Autowired
+    private MovieReviewStatsRepository statsRepository;
+
+    @Autowired
+    private MovieReviewRollupRepository rollupRepository;
+
+    @Autowired
+    private MongoIndexConfig mongoIndexConfig;
+
     private static final String API_URL = "/v1/reviews";
 
     @BeforeEach
@@ -56,6 +77,8 @@ class ReviewRouterIntegrationTest {
     @AfterEach
     void tearDown() {
         repository.deleteAll().block();
+        statsRepository.deleteAll().block();
+        rollupRepository.deleteAll().block();
     }
 
     @Test
@@ -83,6 +106,32 @@ class ReviewRouterIntegrationTest {
                 });
     }
 
+    @Test
+    void when_POST_batch_as_ndjson_then_insert_valid_reviews() {
+        String ndjson = """
+                {"moveInfoId": "3SW", "comment": "Great", "rating": 9.0}
+                {"moveInfoId": "3SW", "comment": "Negative", "rating": -1.0}
+                {"moveInfoId": "3SW", "comment": "Good", "rating": 7.0}
+                """;
+
+        List<BatchItemResult> results = webTestClient.post()
+                .uri(API_URL + "/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(ndjson)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(BatchItemResult.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals(List.of(BatchItemResult.CREATED, BatchItemResult.INVALID, BatchItemResult.CREATED),
+                results.stream().map(BatchItemResult::getStatus).toList());
+        assertEquals(2L, repository.findReviewsByMoveInfoId("3SW").count().block());
+        assertEquals(2L, statsRepository.findById("3SW").block().getCount());
+    }
+
     @Test
     void when_GET_without_id_then_return_all_movies_review() {
         webTestClient.get()
@@ -98,6 +147,298 @@ class ReviewRouterIntegrationTest {
                 });
     }
 
+    @Test
+    void when_GET_pages_with_cursor_then_return_every_review_once() {
+        String nextCursor = webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("limit", 2)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieReview.class)
+                .hasSize(2)
+                .returnResult()
+                .getResponseHeaders()
+                .getFirst(ReviewHandler.NEXT_CURSOR_HEADER);
+
+        assertNotNull(nextCursor);
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("limit", 2)
+                        .queryParam("after", nextCursor)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist(ReviewHandler.NEXT_CURSOR_HEADER)
+                .expectBodyList(MovieReview.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void when_GET_pages_with_fields_then_return_projected_reviews() {
+        String nextCursor = webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("limit", 2)
+                        .queryParam("fields", "id,rating")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].id").exists()
+                .jsonPath("$[0].rating").exists()
+                .jsonPath("$[0].comment").doesNotExist()
+                .returnResult()
+                .getResponseHeaders()
+                .getFirst(ReviewHandler.NEXT_CURSOR_HEADER);
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("moveInfoId", "1SW")
+                        .queryParam("after", nextCursor)
+                        .queryParam("fields", "comment")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].comment").isEqualTo("Worst Movie Ever")
+                .jsonPath("$[0].rating").doesNotExist();
+    }
+
+    @Test
+    void when_GET_top_reviews_then_return_highest_rated_first() {
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL + "/top/{moveInfoId}")
+                        .queryParam("limit", 2)
+                        .build("1SW"))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[1].rating").isEqualTo(8.0);
+    }
+
+    @Test
+    void when_searching_comments_then_page_through_matches_best_first() {
+        mongoIndexConfig.ensureIndexes().blockLast();
+
+        var firstPage = webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL + "/search")
+                        .queryParam("q", "movie")
+                        .queryParam("limit", 2)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(ReviewSearchHit.class)
+                .hasSize(2)
+                .returnResult();
+        String cursor = firstPage.getResponseHeaders().getFirst(ReviewHandler.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+        assertTrue(firstPage.getResponseBody().get(0).getScore() >= firstPage.getResponseBody().get(1).getScore());
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL + "/search")
+                        .queryParam("q", "movie")
+                        .queryParam("limit", 2)
+                        .queryParam("after", cursor)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist(ReviewHandler.NEXT_CURSOR_HEADER)
+                .expectBodyList(ReviewSearchHit.class)
+                .hasSize(1);
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL + "/search")
+                        .queryParam("q", "great")
+                        .queryParam("moveInfoId", "1SW")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].comment").isEqualTo("Great Movie");
+    }
+
+    @Test
+    void when_POST_by_movies_then_return_first_reviews_of_each_movie_in_order() {
+        repository.save(MovieReview.builder().moveInfoId("2SW").comment("Fine").rating(6.0).build()).block();
+
+        webTestClient.post()
+                .uri(API_URL + "/by-movies")
+                .bodyValue(ReviewsByMoviesRequest.builder().moveInfoIds(List.of("2SW", "unknown", "1SW")).limit(2).build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].moveInfoId").isEqualTo("2SW")
+                .jsonPath("$[0].reviews.length()").isEqualTo(1)
+                .jsonPath("$[1].moveInfoId").isEqualTo("1SW")
+                .jsonPath("$[1].reviews.length()").isEqualTo(2)
+                .jsonPath("$[1].reviews[0].comment").isEqualTo("Great Movie");
+    }
+
+    @Test
+    void when_polling_reviews_of_movie_with_etag_then_not_modified_until_a_write() {
+        MovieReview created = webTestClient.post()
+                .uri(API_URL)
+                .bodyValue(MovieReview.builder().moveInfoId("2SW").comment("Fine").rating(6.0).build())
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(MovieReview.class)
+                .returnResult()
+                .getResponseBody();
+        assertNotNull(created.getLastModified());
+
+        String eTag = webTestClient.get()
+                .uri(API_URL + "?moveInfoId=2SW")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .exists(HttpHeaders.LAST_MODIFIED)
+                .returnResult(MovieReview.class)
+                .getResponseHeaders()
+                .getETag();
+        assertNotNull(eTag);
+
+        webTestClient.get()
+                .uri(API_URL + "?moveInfoId=2SW")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus()
+                .isNotModified();
+
+        created.setComment("Fine, after all");
+        webTestClient.put()
+                .uri(API_URL + "/{id}", created.getId())
+                .bodyValue(created)
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.get()
+                .uri(API_URL + "?moveInfoId=2SW")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$[0].comment").isEqualTo("Fine, after all");
+    }
+
+    @Test
+    void when_reviews_are_added_updated_and_deleted_then_stats_follow() {
+        MovieReview created = webTestClient.post()
+                .uri(API_URL)
+                .bodyValue(MovieReview.builder().moveInfoId("2SW").comment("Fine").rating(6.0).build())
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(MovieReview.class)
+                .returnResult()
+                .getResponseBody();
+        webTestClient.post()
+                .uri(API_URL)
+                .bodyValue(MovieReview.builder().moveInfoId("2SW").comment("Great").rating(9.0).build())
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        created.setRating(4.0);
+        webTestClient.put()
+                .uri(API_URL + "/{id}", created.getId())
+                .bodyValue(created)
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}", "2SW")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.sum").isEqualTo(13.0)
+                .jsonPath("$.min").isEqualTo(4.0)
+                .jsonPath("$.max").isEqualTo(9.0)
+                .jsonPath("$.histogram.4").isEqualTo(1)
+                .jsonPath("$.histogram.6").isEqualTo(0);
+
+        webTestClient.delete()
+                .uri(API_URL + "/{id}", created.getId())
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}", "2SW")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(1)
+                .jsonPath("$.mean").isEqualTo(9.0)
+                .jsonPath("$.min").isEqualTo(9.0);
+    }
+
+    @Test
+    void when_reviews_are_added_and_updated_then_trend_of_today_follows() {
+        MovieReview created = webTestClient.post()
+                .uri(API_URL)
+                .bodyValue(MovieReview.builder().moveInfoId("2SW").comment("Fine").rating(6.0).build())
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(MovieReview.class)
+                .returnResult()
+                .getResponseBody();
+        webTestClient.post()
+                .uri(API_URL)
+                .bodyValue(MovieReview.builder().moveInfoId("2SW").comment("Great").rating(9.0).build())
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        created.setRating(3.0);
+        webTestClient.put()
+                .uri(API_URL + "/{id}", created.getId())
+                .bodyValue(created)
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}/trend?bucket=day&from={from}&to={to}", "2SW", today, today.plusDays(1))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].start").isEqualTo(today.atStartOfDay(ZoneOffset.UTC).toInstant().toString())
+                .jsonPath("$[0].count").isEqualTo(2)
+                .jsonPath("$[0].sum").isEqualTo(12.0)
+                .jsonPath("$[0].histogram.3").isEqualTo(1)
+                .jsonPath("$[0].histogram.6").isEqualTo(0);
+    }
+
     @Test
     void when_PUT_then_update_movie_review() {
         MovieReview movieReview = repository.save(MovieReview.builder()
@@ -124,6 +465,36 @@ class ReviewRouterIntegrationTest {
                 });
     }
 
+    @Test
+    void when_PUT_with_if_match_then_update_only_the_expected_version() {
+        MovieReview movieReview = repository.save(MovieReview.builder()
+                .moveInfoId("1SW")
+                .comment("Best movie ever")
+                .rating(10.0)
+                .build()
+        ).block();
+
+        movieReview.setComment("Sucks");
+
+        webTestClient.put()
+                .uri(API_URL + "/{id}", movieReview.getId())
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(movieReview)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        webTestClient.put()
+                .uri(API_URL + "/{id}", movieReview.getId())
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(movieReview)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
     @Test
     void when_PUT_with_inexistent_id_then_return_not_found() {
         MovieReview movieReview = MovieReview.builder()
@@ -1,41 +1,103 @@
 package com.bmo.moviesinforeview.router;
 
+import com.bmo.moviesinforeview.admission.AdmissionControl;
+import com.bmo.moviesinforeview.cache.ReviewsByMovieCache;
+import com.bmo.moviesinforeview.codec.ChunkedJsonEncoder;
+import com.bmo.moviesinforeview.domain.BatchItemResult;
 import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import com.bmo.moviesinforeview.domain.ReviewSearchHit;
+import com.bmo.moviesinforeview.domain.ReviewsByMoviesRequest;
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
 import com.bmo.moviesinforeview.exceptionhandler.GlobalErrorHandler;
+import com.bmo.moviesinforeview.handler.MovieReviewValidator;
 import com.bmo.moviesinforeview.handler.ReviewHandler;
 import com.bmo.moviesinforeview.repository.MovieReviewRepository;
+import com.bmo.moviesinforeview.repository.MovieReviewRollupRepository;
+import com.bmo.moviesinforeview.repository.MovieReviewStatsRepository;
+import com.bmo.moviesinforeview.domain.ReviewEvent;
+import com.bmo.moviesinforeview.stream.ChangeStreamReviewPublisher;
+import com.bmo.moviesinforeview.stream.ReviewBroadcaster;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest
-@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class})
+@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, MovieReviewValidator.class, ReviewBroadcaster.class, ReviewsByMovieCache.class,
+        GlobalErrorHandler.class, AdmissionControl.class, ChunkedJsonEncoder.class})
 @AutoConfigureWebTestClient
 class ReviewRouterTest {
 
     @MockBean
     private MovieReviewRepository repository;
 
+    @MockBean
+    private MovieReviewStatsRepository statsRepository;
+
+    @MockBean
+    private MovieReviewRollupRepository rollupRepository;
+
+    @MockBean
+    private ChangeStreamReviewPublisher changeStreamReviewPublisher;
+
+    @Autowired
+    private ReviewBroadcaster reviewBroadcaster;
+
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private ReviewsByMovieCache reviewsByMovieCache;
+
     private static final String API_URL = "/v1/reviews";
 
+    @BeforeEach
+    void setUp() {
+        reviewsByMovieCache.invalidateAll();
+        when(statsRepository.recordAdded(isA(MovieReview.class))).thenReturn(Mono.empty());
+        when(statsRepository.recordAdded(anyList())).thenReturn(Mono.empty());
+        when(statsRepository.recordRatingChanged(isA(MovieReview.class), anyDouble())).thenReturn(Mono.empty());
+        when(statsRepository.recordDeleted(isA(MovieReview.class))).thenReturn(Mono.empty());
+        when(statsRepository.findChangeMarker(anyString())).thenReturn(Mono.empty());
+    }
+
     @Test
     void when_POST_new_review_then_create_it() {
         var review = MovieReview.builder()
@@ -84,8 +146,80 @@ class ReviewRouterTest {
                 .exchange()
                 .expectStatus()
                 .isBadRequest()
-                .expectBody(String.class)
-                .isEqualTo("rating.move: value must not be null, rating.negative: rating is negative, pls provide a positive value");
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("rating.move: value must not be null, rating.negative: rating is negative, pls provide a positive value");
+    }
+
+    @Test
+    void when_POST_review_with_too_long_comment_then_bad_request_and_too_large_body_then_unread() {
+        webTestClient.post()
+                .uri(API_URL)
+                .bodyValue(MovieReview.builder().moveInfoId("1SW").comment("a".repeat(2001)).rating(5.0).build())
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("comment.length: comment must be at most 2000 characters");
+
+        webTestClient.post()
+                .uri(API_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"moveInfoId\": \"1SW\", \"rating\": 5, \"comment\": \"" + "a".repeat(13_100) + "\"}")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE)
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("review: body must be at most 13024 bytes");
+
+        verify(repository, never()).save(isA(MovieReview.class));
+    }
+
+    @Test
+    void when_POST_batch_then_return_result_per_review() {
+        var reviewList = List.of(
+                MovieReview.builder()
+                        .moveInfoId("1SW")
+                        .comment("Great Movie")
+                        .rating(9.0)
+                        .build(),
+                MovieReview.builder()
+                        .moveInfoId(null)
+                        .comment("No movie")
+                        .rating(8.0)
+                        .build(),
+                MovieReview.builder()
+                        .moveInfoId("1SW")
+                        .comment("Duplicated")
+                        .rating(1.0)
+                        .build()
+        );
+
+        when(repository.insertUnordered(anyList()))
+                .thenReturn(Mono.just(Map.of(1, "E11000 duplicate key error")));
+
+        List<BatchItemResult> results = webTestClient.post()
+                .uri(API_URL + "/batch")
+                .bodyValue(reviewList)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(BatchItemResult.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals(3, results.size());
+        assertEquals(BatchItemResult.CREATED, results.get(0).getStatus());
+        assertNotNull(results.get(0).getId());
+        assertEquals(BatchItemResult.INVALID, results.get(1).getStatus());
+        assertEquals("rating.move: value must not be null", results.get(1).getError());
+        assertEquals(BatchItemResult.FAILED, results.get(2).getStatus());
+        assertEquals(2L, results.get(2).getIndex());
+        assertEquals("E11000 duplicate key error", results.get(2).getError());
     }
 
     @Test
@@ -111,13 +245,15 @@ class ReviewRouterTest {
                         .build()
         );
 
-        when(repository.findAll()).thenReturn(Flux.fromIterable(reviewList));
+        when(repository.findAllByOrderByIdAsc(isA(Pageable.class))).thenReturn(Flux.fromIterable(reviewList));
 
         webTestClient.get()
                 .uri(API_URL)
                 .exchange()
                 .expectStatus()
                 .isOk()
+                .expectHeader()
+                .doesNotExist(ReviewHandler.NEXT_CURSOR_HEADER)
                 .expectBodyList(MovieReview.class)
                 .hasSize(3)
                 .consumeWith(listEntityExchangeResult -> {
@@ -127,6 +263,61 @@ class ReviewRouterTest {
                 });
     }
 
+    @Test
+    void when_GET_with_limit_then_return_page_and_next_cursor() {
+        var reviewList = List.of(
+                MovieReview.builder()
+                        .id("1")
+                        .moveInfoId("1SW")
+                        .comment("Great Movie")
+                        .rating(9.0)
+                        .build(),
+                MovieReview.builder()
+                        .id("2")
+                        .moveInfoId("1SW")
+                        .comment("Good Movie")
+                        .rating(8.0)
+                        .build(),
+                MovieReview.builder()
+                        .id("3")
+                        .moveInfoId("1SW")
+                        .comment("Worst Movie Ever")
+                        .rating(1.0)
+                        .build()
+        );
+
+        when(repository.findByIdGreaterThanOrderByIdAsc(eq("0"), isA(Pageable.class)))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("limit", 2)
+                        .queryParam("after", "0")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(ReviewHandler.NEXT_CURSOR_HEADER, "2")
+                .expectBodyList(MovieReview.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void when_GET_with_invalid_limit_then_bad_request() {
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("limit", 0)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("page.limit: limit must be a number between 1 and 1000");
+    }
+
     @Test
     void when_PUT_then_update_movie_review() {
         final var movieReviewId = UUID.randomUUID().toString();
@@ -138,17 +329,16 @@ class ReviewRouterTest {
                 .rating(10.0)
                 .build();
 
-        when(repository.findById(Mockito.anyString()))
+        when(repository.updateCommentAndRating(eq(movieReviewId), eq("Best movie ever"), eq(10.0), isNull(), isA(Instant.class)))
                 .thenReturn(Mono.just(
                         MovieReview.builder()
                                 .id(movieReviewId)
                                 .moveInfoId("1SW")
                                 .comment("Nice movie")
                                 .rating(5.0)
+                                .version(3L)
                                 .build()
                 ));
-        when(repository.save(isA(MovieReview.class)))
-                .thenReturn(Mono.just(movieReview));
 
         webTestClient.put()
                 .uri(API_URL + "/{id}", movieReviewId)
@@ -156,12 +346,40 @@ class ReviewRouterTest {
                 .exchange()
                 .expectStatus()
                 .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, "\"4\"")
                 .expectBody(MovieReview.class)
                 .consumeWith(movieReviewEntityExchangeResult -> {
                     MovieReview responseBody = movieReviewEntityExchangeResult.getResponseBody();
                     assertEquals("Best movie ever", responseBody.getComment());
                     assertEquals(10.0, responseBody.getRating());
+                    assertEquals(4L, responseBody.getVersion());
                 });
+        verify(repository, never()).save(isA(MovieReview.class));
+    }
+
+    @Test
+    void when_PUT_with_stale_if_match_then_precondition_failed() {
+        final var movieReviewId = UUID.randomUUID().toString();
+
+        final MovieReview movieReview = MovieReview.builder()
+                .id(movieReviewId)
+                .moveInfoId("1SW")
+                .comment("Best movie ever")
+                .rating(10.0)
+                .build();
+
+        when(repository.updateCommentAndRating(eq(movieReviewId), anyString(), anyDouble(), eq(2L), isA(Instant.class)))
+                .thenReturn(Mono.empty());
+        when(repository.existsById(movieReviewId)).thenReturn(Mono.just(true));
+
+        webTestClient.put()
+                .uri(API_URL + "/{id}", movieReviewId)
+                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                .bodyValue(movieReview)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.PRECONDITION_FAILED);
     }
 
     @Test
@@ -175,7 +393,7 @@ class ReviewRouterTest {
                 .rating(-10.0)
                 .build();
 
-        when(repository.findById(Mockito.anyString()))
+        when(repository.updateCommentAndRating(anyString(), anyString(), anyDouble(), isNull(), isA(Instant.class)))
                 .thenReturn(Mono.just(
                         MovieReview.builder()
                                 .id(movieReviewId)
@@ -191,11 +409,8 @@ class ReviewRouterTest {
                 .exchange()
                 .expectStatus()
                 .isBadRequest()
-                .expectBody(String.class)
-                .consumeWith(stringEntityExchangeResult -> {
-                    final String responseBody = stringEntityExchangeResult.getResponseBody();
-                    assertEquals("rating.move: value must not be null, rating.negative: rating is negative, pls provide a positive value", responseBody);
-                });
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("rating.move: value must not be null, rating.negative: rating is negative, pls provide a positive value");
     }
 
     @Test
@@ -206,7 +421,7 @@ class ReviewRouterTest {
                 .rating(10.0)
                 .build();
 
-        when(repository.findById(anyString())).thenReturn(Mono.empty());
+        when(repository.updateCommentAndRating(anyString(), anyString(), anyDouble(), isNull(), isA(Instant.class))).thenReturn(Mono.empty());
 
         webTestClient.put()
                 .uri(API_URL + "/EST12312")
@@ -214,11 +429,8 @@ class ReviewRouterTest {
                 .exchange()
                 .expectStatus()
                 .isNotFound()
-                .expectBody(String.class)
-                .consumeWith(stringEntityExchangeResult -> {
-                    final String responsBody = stringEntityExchangeResult.getResponseBody();
-                    assertEquals("Movie Review Not found", responsBody);
-                });
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Movie Review Not found");
     }
 
     @Test
@@ -229,8 +441,7 @@ class ReviewRouterTest {
                 .rating(10.0)
                 .build();
 
-        when(repository.findById(anyString())).thenReturn(Mono.just(movieReview));
-        when(repository.deleteById(anyString())).thenReturn(Mono.empty());
+        when(repository.findAndRemoveById(eq("123124"), isNull())).thenReturn(Mono.just(movieReview));
 
         webTestClient.delete()
                 .uri(API_URL + "/{id}", "123124")
@@ -247,18 +458,15 @@ class ReviewRouterTest {
                 .rating(10.0)
                 .build();
 
-        when(repository.findById(anyString())).thenReturn(Mono.empty());
+        when(repository.findAndRemoveById(anyString(), isNull())).thenReturn(Mono.empty());
 
         webTestClient.delete()
                 .uri(API_URL + "/{id}", "123124")
                 .exchange()
                 .expectStatus()
                 .isNotFound()
-                .expectBody(String.class)
-                .consumeWith(stringEntityExchangeResult -> {
-                    final String responsBody = stringEntityExchangeResult.getResponseBody();
-                    assertEquals("Movie Review Not found", responsBody);
-                });
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Movie Review Not found");
     }
 
     @Test
@@ -271,7 +479,7 @@ class ReviewRouterTest {
                 .rating(5.0)
                 .build());
 
-        when(repository.findReviewsByMoveInfoId(Mockito.anyString()))
+        when(repository.findReviewsByMoveInfoIdOrderByIdAsc(Mockito.anyString(), isA(Pageable.class)))
                 .thenReturn(Flux.fromIterable(moviesReviewList));
 
         webTestClient.get()
@@ -289,9 +497,54 @@ class ReviewRouterTest {
                 });
     }
 
+    @Test
+    void when_GET_review_by_movieInfoId_twice_then_query_once_until_a_write() {
+        var movieReview = MovieReview.builder()
+                .id(UUID.randomUUID().toString())
+                .moveInfoId("1SW")
+                .comment("Nice movie")
+                .rating(5.0)
+                .build();
+
+        when(repository.findReviewsByMoveInfoIdOrderByIdAsc(Mockito.anyString(), isA(Pageable.class)))
+                .thenReturn(Flux.just(movieReview));
+        when(repository.save(isA(MovieReview.class))).thenReturn(Mono.just(movieReview));
+        final long hitCount = reviewsByMovieCache.stats().hitCount();
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient.get()
+                    .uri(uriBuilder -> uriBuilder.path(API_URL)
+                            .queryParam("moveInfoId", "1SW")
+                            .build())
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectBodyList(MovieReview.class)
+                    .hasSize(1);
+        }
+        verify(repository, times(1)).findReviewsByMoveInfoIdOrderByIdAsc(eq("1SW"), isA(Pageable.class));
+
+        webTestClient.post()
+                .uri(API_URL)
+                .bodyValue(movieReview)
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("moveInfoId", "1SW")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk();
+        verify(repository, times(2)).findReviewsByMoveInfoIdOrderByIdAsc(eq("1SW"), isA(Pageable.class));
+        assertEquals(hitCount + 1, reviewsByMovieCache.stats().hitCount());
+    }
+
     @Test
     void when_GET_review_by_movieInfoId_inexistent_then_not_found() {
-        when(repository.findReviewsByMoveInfoId(Mockito.anyString()))
+        when(repository.findReviewsByMoveInfoIdOrderByIdAsc(Mockito.anyString(), isA(Pageable.class)))
                 .thenReturn(Flux.empty());
 
         webTestClient.get()
@@ -301,10 +554,546 @@ class ReviewRouterTest {
                 .exchange()
                 .expectStatus()
                 .isNotFound()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Movie Review Not found");
+    }
+
+    @Test
+    void when_GET_review_stats_then_return_aggregates() {
+        when(statsRepository.findById("1SW"))
+                .thenReturn(Mono.just(MovieReviewStats.builder()
+                        .moveInfoId("1SW")
+                        .count(2)
+                        .sum(15.0)
+                        .min(6.0)
+                        .max(9.0)
+                        .histogram(Map.of("6", 1L, "9", 1L))
+                        .build()));
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}", "1SW")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.mean").isEqualTo(7.5)
+                .jsonPath("$.min").isEqualTo(6.0)
+                .jsonPath("$.max").isEqualTo(9.0)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+    }
+
+    @Test
+    void when_GET_review_stats_inexistent_then_not_found() {
+        when(statsRepository.findById(anyString())).thenReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}", "21SW")
+                .exchange()
+                .expectStatus()
+                .isNotFound()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Movie Review Stats Not found");
+    }
+
+    @Test
+    void when_repository_fails_then_return_problem_without_internal_message() {
+        when(statsRepository.findById(anyString())).thenReturn(Mono.error(new IllegalStateException("connection to 10.0.0.7 refused")));
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}", "1SW")
+                .exchange()
+                .expectStatus()
+                .is5xxServerError()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .expectBody()
+                .jsonPath("$.status").isEqualTo(500)
+                .jsonPath("$.title").isEqualTo("Internal Server Error")
+                .jsonPath("$.detail").isEqualTo("Internal Server Error");
+    }
+
+    @Test
+    void when_GET_with_fields_then_project_in_mongo_and_return_only_those_fields() {
+        var reviewList = List.of(
+                MovieReview.builder().id("1").rating(9.0).build(),
+                MovieReview.builder().id("2").rating(8.0).build(),
+                MovieReview.builder().id("3").rating(1.0).build()
+        );
+
+        when(repository.findPageWithFields(isNull(), isNull(), eq(Sort.by(Sort.Direction.ASC, "id")), eq(3), eq(List.of("id", "rating"))))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("limit", 2)
+                        .queryParam("fields", "rating,id")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(ReviewHandler.NEXT_CURSOR_HEADER, "2")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].id").isEqualTo("1")
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[0].comment").doesNotExist()
+                .jsonPath("$[0].moveInfoId").doesNotExist();
+    }
+
+    @Test
+    void when_GET_first_page_of_movie_with_fields_then_select_them_from_cached_page() {
+        when(repository.findReviewsByMoveInfoIdOrderByIdAsc(eq("1SW"), isA(Pageable.class)))
+                .thenReturn(Flux.just(MovieReview.builder().id("1").moveInfoId("1SW").comment("Great Movie").rating(9.0).build()));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("moveInfoId", "1SW")
+                        .queryParam("fields", "comment")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$[0].comment").isEqualTo("Great Movie")
+                .jsonPath("$[0].id").doesNotExist()
+                .jsonPath("$[0].rating").doesNotExist();
+    }
+
+    @Test
+    void when_GET_with_unknown_field_then_bad_request() {
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("fields", "id,password")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("fields: unknown field password, select from id, moveInfoId, comment, rating, version");
+    }
+
+    @Test
+    void when_GET_sorted_by_rating_then_push_sort_and_limit_to_mongo() {
+        when(repository.findReviewsByMoveInfoId(eq("1SW"), isA(Pageable.class)))
+                .thenReturn(Flux.just(
+                        MovieReview.builder().id("2").moveInfoId("1SW").rating(9.0).build(),
+                        MovieReview.builder().id("1").moveInfoId("1SW").rating(7.0).build()));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("moveInfoId", "1SW")
+                        .queryParam("sort", "rating,desc")
+                        .queryParam("limit", 2)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist(ReviewHandler.NEXT_CURSOR_HEADER)
+                .expectBodyList(MovieReview.class)
+                .hasSize(2);
+
+        ArgumentCaptor<Pageable> pageableCaptor = ArgumentCaptor.forClass(Pageable.class);
+        verify(repository).findReviewsByMoveInfoId(eq("1SW"), pageableCaptor.capture());
+        assertEquals(2, pageableCaptor.getValue().getPageSize());
+        assertEquals(Sort.by(Sort.Direction.DESC, "rating").and(Sort.by(Sort.Direction.ASC, "id")),
+                pageableCaptor.getValue().getSort());
+    }
+
+    @Test
+    void when_GET_top_reviews_then_return_highest_rated_with_default_limit() {
+        when(repository.findReviewsByMoveInfoId(eq("1SW"), isA(Pageable.class)))
+                .thenReturn(Flux.just(MovieReview.builder().id("1").moveInfoId("1SW").rating(9.0).build()));
+
+        webTestClient.get()
+                .uri(API_URL + "/top/{moveInfoId}", "1SW")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieReview.class)
+                .hasSize(1);
+
+        ArgumentCaptor<Pageable> pageableCaptor = ArgumentCaptor.forClass(Pageable.class);
+        verify(repository).findReviewsByMoveInfoId(eq("1SW"), pageableCaptor.capture());
+        assertEquals(10, pageableCaptor.getValue().getPageSize());
+        assertEquals(Sort.Direction.DESC, pageableCaptor.getValue().getSort().getOrderFor("rating").getDirection());
+    }
+
+    @Test
+    void when_GET_sorted_by_rating_without_movie_then_bad_request() {
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("sort", "rating,desc")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("sort: sorting by rating needs a moveInfoId");
+    }
+
+    @Test
+    void when_GET_stream_with_malformed_last_event_id_then_ignore_it_and_deliver_later_events() {
+        Disposable publishing = publishUntilReceived(ReviewEvent.of(ReviewEvent.Type.CREATED,
+                MovieReview.builder().id("1").moveInfoId("STREAM1").rating(7.0).build()));
+        Flux<ServerSentEvent<MovieReview>> eventFlux = webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL + "/stream")
+                        .queryParam("moveInfoId", "STREAM1")
+                        .build())
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", "z")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<MovieReview>>() {})
+                .getResponseBody();
+
+        StepVerifier.create(eventFlux)
+                .assertNext(event -> assertEquals("1", event.data().getId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        publishing.dispose();
+
+        verify(changeStreamReviewPublisher, never()).resumeAfter(anyString(), any());
+    }
+
+    @Test
+    void when_GET_stream_with_last_event_id_then_resume_after_it() {
+        when(changeStreamReviewPublisher.resumeAfter(eq("8263A1B2C3"), any()))
+                .thenAnswer(invocation -> invocation.getArgument(1));
+
+        Disposable publishing = publishUntilReceived(ReviewEvent.of(ReviewEvent.Type.CREATED,
+                MovieReview.builder().id("2").moveInfoId("STREAM2").rating(7.0).build()));
+        Flux<ServerSentEvent<MovieReview>> eventFlux = webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL + "/stream")
+                        .queryParam("moveInfoId", "STREAM2")
+                        .build())
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", "8263A1B2C3")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<MovieReview>>() {})
+                .getResponseBody();
+
+        StepVerifier.create(eventFlux)
+                .assertNext(event -> assertEquals("2", event.data().getId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        publishing.dispose();
+    }
+
+    // the response is only committed with its first event, and only events published once the handler has
+    // subscribed reach it, so the event is published until the stream is cancelled
+    private Disposable publishUntilReceived(ReviewEvent reviewEvent) {
+        return Flux.interval(Duration.ofMillis(10))
+                .subscribe(tick -> reviewBroadcaster.publish(reviewEvent));
+    }
+
+    @Test
+    void when_GET_accepting_ndjson_then_stream_one_review_per_line_without_cursor() {
+        when(repository.findAllByOrderByIdAsc(isA(Pageable.class)))
+                .thenReturn(Flux.just(
+                        MovieReview.builder().id("1").moveInfoId("1SW").rating(9.0).build(),
+                        MovieReview.builder().id("2").moveInfoId("1SW").rating(8.0).build(),
+                        MovieReview.builder().id("3").moveInfoId("1SW").rating(1.0).build()));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL)
+                        .queryParam("limit", 2)
+                        .build())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .expectHeader()
+                .doesNotExist(ReviewHandler.NEXT_CURSOR_HEADER)
                 .expectBody(String.class)
-                .consumeWith(stringEntityExchangeResult -> {
-                    final String responsBody = stringEntityExchangeResult.getResponseBody();
-                    assertEquals("Movie Review Not found", responsBody);
+                .value(body -> {
+                    String[] lines = body.split("\n");
+                    assertEquals(2, lines.length);
+                    assertTrue(lines[0].contains("\"id\":\"1\""));
+                    assertTrue(lines[1].contains("\"id\":\"2\""));
                 });
     }
-}
\ No newline at end of file
+
+    @Test
+    void when_GET_top_reviews_of_movie_without_reviews_then_not_found_before_streaming() {
+        when(repository.findReviewsByMoveInfoId(eq("1SW"), isA(Pageable.class))).thenReturn(Flux.empty());
+
+        webTestClient.get()
+                .uri(API_URL + "/top/{moveInfoId}", "1SW")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isNotFound()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_PROBLEM_JSON);
+    }
+
+    @Test
+    void when_GET_search_then_return_hits_and_next_cursor() {
+        when(repository.searchComments(eq("great movie"), eq("1SW"), isNull(), isNull(), eq(3)))
+                .thenReturn(Flux.just(
+                        ReviewSearchHit.builder().id("a").moveInfoId("1SW").comment("Great Movie").score(1.5).build(),
+                        ReviewSearchHit.builder().id("b").moveInfoId("1SW").comment("Good Movie").score(0.75).build(),
+                        ReviewSearchHit.builder().id("c").moveInfoId("1SW").comment("Movie").score(0.5).build()));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL + "/search")
+                        .queryParam("q", "great movie")
+                        .queryParam("moveInfoId", "1SW")
+                        .queryParam("limit", 2)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(ReviewHandler.NEXT_CURSOR_HEADER, "0.75_b")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].score").isEqualTo(1.5)
+                .jsonPath("$[0].comment").isEqualTo("Great Movie");
+    }
+
+    @Test
+    void when_GET_search_after_cursor_then_continue_after_that_hit() {
+        when(repository.searchComments(eq("movie"), isNull(), eq(0.75), eq("b"), eq(101))).thenReturn(Flux.empty());
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL + "/search")
+                        .queryParam("q", "movie")
+                        .queryParam("after", "0.75_b")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .json("[]");
+    }
+
+    @Test
+    void when_GET_search_without_text_or_with_bad_cursor_then_bad_request() {
+        webTestClient.get()
+                .uri(API_URL + "/search?q= ")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("q: search text must not be blank");
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(API_URL + "/search")
+                        .queryParam("q", "movie")
+                        .queryParam("after", "b")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("after: not a search cursor");
+    }
+
+    @Test
+    void when_POST_by_movies_then_return_reviews_grouped_by_movie() {
+        when(repository.findFirstReviewsOfMovies(eq(List.of("1SW", "2SW", "3SW")), eq(2), isNull()))
+                .thenReturn(Flux.just(
+                        MovieReview.builder().id("a").moveInfoId("1SW").comment("Great Movie").rating(9.0).build(),
+                        MovieReview.builder().id("b").moveInfoId("1SW").comment("Good Movie").rating(8.0).build(),
+                        MovieReview.builder().id("c").moveInfoId("3SW").comment("Bad Movie").rating(2.0).build()));
+
+        webTestClient.post()
+                .uri(API_URL + "/by-movies")
+                .bodyValue(ReviewsByMoviesRequest.builder().moveInfoIds(List.of("1SW", "2SW", "1SW", "3SW")).limit(2).build())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].moveInfoId").isEqualTo("1SW")
+                .jsonPath("$[0].reviews.length()").isEqualTo(2)
+                .jsonPath("$[1].moveInfoId").isEqualTo("3SW")
+                .jsonPath("$[1].reviews[0].comment").isEqualTo("Bad Movie");
+    }
+
+    @Test
+    void when_POST_by_movies_without_movies_or_with_bad_limit_then_bad_request() {
+        webTestClient.post()
+                .uri(API_URL + "/by-movies")
+                .bodyValue(ReviewsByMoviesRequest.builder().moveInfoIds(List.of(" ")).build())
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("moveInfoIds: must list between 1 and 100 movies");
+
+        webTestClient.post()
+                .uri(API_URL + "/by-movies")
+                .bodyValue(ReviewsByMoviesRequest.builder().moveInfoIds(List.of("1SW")).limit(0).build())
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("page.limit: limit must be a number between 1 and 1000");
+    }
+
+    @Test
+    void when_GET_reviews_of_movie_with_current_etag_then_not_modified_without_reading_reviews() {
+        when(statsRepository.findChangeMarker("1SW")).thenReturn(Mono.just(MovieReviewStats.builder()
+                .version(7)
+                .lastModified(Instant.parse("2023-10-01T12:00:00.250Z"))
+                .build()));
+        when(repository.findReviewsByMoveInfoIdOrderByIdAsc(eq("1SW"), isA(Pageable.class)))
+                .thenReturn(Flux.just(MovieReview.builder().id("a").moveInfoId("1SW").comment("Nice movie").rating(5.0).build()));
+
+        String eTag = webTestClient.get()
+                .uri(API_URL + "?moveInfoId=1SW")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, "W/\"7-1696161600250\"")
+                .expectHeader()
+                .valueEquals(HttpHeaders.LAST_MODIFIED, "Sun, 01 Oct 2023 12:00:00 GMT")
+                .returnResult(MovieReview.class)
+                .getResponseHeaders()
+                .getETag();
+
+        webTestClient.get()
+                .uri(API_URL + "?moveInfoId=1SW")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, eTag)
+                .expectBody()
+                .isEmpty();
+
+        webTestClient.get()
+                .uri(API_URL + "?moveInfoId=1SW")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"6-1696161600000\"")
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        // the first page is cached, only the request without a current ETag read it
+        verify(repository, times(1)).findReviewsByMoveInfoIdOrderByIdAsc(eq("1SW"), isA(Pageable.class));
+        verify(statsRepository, times(3)).findChangeMarker("1SW");
+    }
+
+    @Test
+    void when_GET_reviews_of_movie_after_a_change_elsewhere_then_cached_page_is_not_reused() {
+        when(statsRepository.findChangeMarker("1SW"))
+                .thenReturn(Mono.just(MovieReviewStats.builder().version(1).lastModified(Instant.parse("2023-10-01T12:00:00Z")).build()))
+                .thenReturn(Mono.just(MovieReviewStats.builder().version(2).lastModified(Instant.parse("2023-10-01T12:00:05Z")).build()));
+        when(repository.findReviewsByMoveInfoIdOrderByIdAsc(eq("1SW"), isA(Pageable.class)))
+                .thenReturn(Flux.just(MovieReview.builder().id("a").moveInfoId("1SW").comment("Nice movie").rating(5.0).build()));
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient.get()
+                    .uri(API_URL + "?moveInfoId=1SW")
+                    .exchange()
+                    .expectStatus()
+                    .isOk();
+        }
+
+        verify(repository, times(2)).findReviewsByMoveInfoIdOrderByIdAsc(eq("1SW"), isA(Pageable.class));
+    }
+
+    @Test
+    void when_GET_review_stats_modified_since_then_full_response_otherwise_not_modified() {
+        when(statsRepository.findById("1SW")).thenReturn(Mono.just(MovieReviewStats.builder()
+                .moveInfoId("1SW")
+                .count(1)
+                .sum(5.0)
+                .version(3)
+                .lastModified(Instant.parse("2023-10-01T12:00:00Z"))
+                .build()));
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}", "1SW")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Sun, 01 Oct 2023 11:59:59 GMT")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, "W/\"3-1696161600000\"");
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}", "1SW")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Sun, 01 Oct 2023 12:00:00 GMT")
+                .exchange()
+                .expectStatus()
+                .isNotModified();
+    }
+
+    @Test
+    void when_GET_review_trend_then_non_empty_buckets_of_range() {
+        when(rollupRepository.findByMoveInfoIdAndBucketAndStartGreaterThanEqualAndStartLessThanOrderByStartAsc(
+                "1SW", MovieReviewRollup.Bucket.HOUR, Instant.parse("2023-10-01T10:00:00Z"), Instant.parse("2023-10-02T00:00:00Z")))
+                .thenReturn(Flux.just(
+                        MovieReviewRollup.builder().moveInfoId("1SW").bucket(MovieReviewRollup.Bucket.HOUR)
+                                .start(Instant.parse("2023-10-01T10:00:00Z")).count(2).sum(7.0).build(),
+                        MovieReviewRollup.builder().moveInfoId("1SW").bucket(MovieReviewRollup.Bucket.HOUR)
+                                .start(Instant.parse("2023-10-01T11:00:00Z")).count(0).sum(0.0).build(),
+                        MovieReviewRollup.builder().moveInfoId("1SW").bucket(MovieReviewRollup.Bucket.HOUR)
+                                .start(Instant.parse("2023-10-01T14:00:00Z")).count(1).sum(5.0).build()));
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}/trend?bucket=hour&from=2023-10-01T10:30:00Z&to=2023-10-02", "1SW")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].start").isEqualTo("2023-10-01T10:00:00Z")
+                .jsonPath("$[0].mean").isEqualTo(3.5)
+                .jsonPath("$[1].start").isEqualTo("2023-10-01T14:00:00Z")
+                .jsonPath("$[0].id").doesNotExist();
+    }
+
+    @Test
+    void when_GET_review_trend_with_bad_range_then_bad_request() {
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}/trend?from=yesterday&to=2023-10-02", "1SW")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("from: must be an ISO-8601 instant or date");
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}/trend?bucket=week&from=2023-10-01&to=2023-10-02", "1SW")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("bucket: must be hour or day");
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}/trend?from=2023-10-02&to=2023-10-01", "1SW")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("to: must be after from");
+
+        webTestClient.get()
+                .uri(API_URL + "/stats/{moveInfoId}/trend?bucket=hour&from=2023-01-01&to=2024-01-01", "1SW")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("to: must be within 1000 buckets of from");
+
+        verify(rollupRepository, never()).findByMoveInfoIdAndBucketAndStartGreaterThanEqualAndStartLessThanOrderByStartAsc(
+                anyString(), isA(MovieReviewRollup.Bucket.class), isA(Instant.class), isA(Instant.class));
+    }
+}
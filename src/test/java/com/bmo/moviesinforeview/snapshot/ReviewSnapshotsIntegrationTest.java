@@ -0,0 +1,103 @@
+package com.bmo.moviesinforeview.snapshot;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.MovieReviewRollup;
+import com.bmo.moviesinforeview.domain.MovieReviewStats;
+import com.bmo.moviesinforeview.repository.MovieReviewRepository;
+import com.bmo.moviesinforeview.repository.MovieReviewStatsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(properties = "reviews.snapshot.batch-size=100")
+@ActiveProfiles("test")
+class ReviewSnapshotsIntegrationTest {
+
+    @Autowired
+    private ReviewSnapshots reviewSnapshots;
+
+    @Autowired
+    private MovieReviewRepository repository;
+
+    @Autowired
+    private MovieReviewStatsRepository statsRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll().block();
+        statsRepository.deleteAll().block();
+        reactiveMongoTemplate.remove(new Query(), MovieReviewRollup.class).block();
+    }
+
+    @Test
+    void when_exported_reviews_are_imported_then_reviews_and_stats_are_back() {
+        List<MovieReview> movieReviews = IntStream.range(0, 250)
+                .mapToObj(i -> MovieReview.builder().moveInfoId(i % 2 == 0 ? "1SW" : "2SW").comment("Review " + i).rating(i % 11).build())
+                .toList();
+        repository.saveAll(movieReviews).blockLast();
+        Path file = directory.resolve("reviews.bson.gz");
+
+        SnapshotReport export = reviewSnapshots.export(file).block();
+        assertEquals(250, export.documents());
+
+        // one review is left in place, importing it again fails without stopping the others
+        MovieReview kept = movieReviews.get(0);
+        repository.deleteAll(movieReviews.subList(1, movieReviews.size())).block();
+
+        SnapshotReport imported = reviewSnapshots.importFrom(file).block();
+        assertEquals(249, imported.documents());
+        assertEquals(1, imported.failed());
+        assertEquals(export.bsonBytes(), imported.bsonBytes());
+
+        assertEquals(250, repository.count().block());
+        assertEquals(kept, repository.findById(kept.getId()).block());
+        MovieReviewStats stats = statsRepository.findById("2SW").block();
+        assertEquals(125, stats.getCount());
+    }
+
+    @Test
+    void when_stats_are_rebuilt_then_reviews_saved_without_them_are_counted() {
+        // reviews from before the stats were kept, and stats of a movie without reviews left
+        repository.saveAll(IntStream.range(0, 10)
+                .mapToObj(i -> MovieReview.builder().moveInfoId("1SW").comment("Review " + i).rating(i % 3 + 0.5).build())
+                .toList()).blockLast();
+        statsRepository.save(MovieReviewStats.builder().moveInfoId("2SW").count(3).sum(9.0).min(3.0).max(3.0).build()).block();
+
+        assertEquals(1L, statsRepository.rebuild().block());
+
+        MovieReviewStats stats = statsRepository.findById("1SW").block();
+        assertEquals(10, stats.getCount());
+        assertEquals(0.5 * 4 + 1.5 * 3 + 2.5 * 3, stats.getSum());
+        assertEquals(0.5, stats.getMin());
+        assertEquals(2.5, stats.getMax());
+        assertEquals(Map.of("0", 4L, "1", 3L, "2", 3L), stats.getHistogram());
+        assertNull(statsRepository.findById("2SW").block());
+
+        List<MovieReviewRollup> rollups = reactiveMongoTemplate.findAll(MovieReviewRollup.class).collectList().block();
+        for (MovieReviewRollup.Bucket bucket : MovieReviewRollup.Bucket.values()) {
+            assertEquals(10, rollups.stream().filter(rollup -> rollup.getBucket() == bucket)
+                    .mapToLong(MovieReviewRollup::getCount).sum());
+        }
+        rollups.forEach(rollup ->
+                assertEquals(MovieReviewRollup.idOf("1SW", rollup.getBucket(), rollup.getStart()), rollup.getId()));
+    }
+}
@@ -0,0 +1,125 @@
+package com.bmo.moviesinforeview.snapshot;
+
+import com.bmo.moviesinforeview.cache.ReviewsByMovieCache;
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.repository.MovieReviewStatsRepository;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewSnapshotsTest {
+
+    @TempDir
+    Path directory;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    private final MovieReviewStatsRepository movieReviewStatsRepository = mock(MovieReviewStatsRepository.class);
+
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<Document> collection = mock(MongoCollection.class);
+
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<RawBsonDocument> rawCollection = mock(MongoCollection.class);
+
+    @Captor
+    private ArgumentCaptor<List<RawBsonDocument>> insertedCaptor;
+
+    @Captor
+    private ArgumentCaptor<List<MovieReview>> recordedCaptor;
+
+    private final ReviewSnapshots reviewSnapshots = new ReviewSnapshots(reactiveMongoTemplate, movieReviewStatsRepository,
+            new ReviewsByMovieCache(100, Duration.ofSeconds(30), new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class)),
+            100, 1);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(reactiveMongoTemplate.getCollectionName(MovieReview.class)).thenReturn("movieReview");
+        when(reactiveMongoTemplate.getCollection(anyString())).thenReturn(Mono.just(collection));
+        when(collection.withDocumentClass(RawBsonDocument.class)).thenReturn(rawCollection);
+        when(rawCollection.insertMany(anyList(), isA(InsertManyOptions.class)))
+                .thenReturn(Mono.just(mock(InsertManyResult.class)));
+        when(movieReviewStatsRepository.recordAdded(anyList())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void when_documents_are_malformed_then_count_them_as_failed_and_import_the_others() throws IOException {
+        Path file = directory.resolve("reviews.bson.gz");
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.write(review("1SW", new BsonDouble(7.0)));
+            // legacy documents: no rating, a rating stored as text, no movie
+            writer.write(raw(new BsonDocument("moveInfoId", new BsonString("1SW"))));
+            writer.write(review("1SW", new BsonString("7")));
+            writer.write(raw(new BsonDocument("rating", new BsonDouble(7.0))));
+            writer.write(truncated(review("2SW", new BsonDouble(3.0))));
+            writer.write(review("2SW", new BsonDouble(3.0)));
+            writer.finish();
+        }
+
+        StepVerifier.create(reviewSnapshots.importFrom(file))
+                .assertNext(report -> {
+                    assertEquals(2, report.documents());
+                    assertEquals(4, report.failed());
+                })
+                .verifyComplete();
+
+        verify(rawCollection).insertMany(insertedCaptor.capture(), isA(InsertManyOptions.class));
+        assertEquals(2, insertedCaptor.getValue().size());
+        verify(movieReviewStatsRepository).recordAdded(recordedCaptor.capture());
+        assertEquals(List.of("1SW", "2SW"), recordedCaptor.getValue().stream().map(MovieReview::getMoveInfoId).toList());
+        assertEquals(List.of(7.0, 3.0), recordedCaptor.getValue().stream().map(MovieReview::getRating).toList());
+    }
+
+    private static RawBsonDocument review(String moveInfoId, BsonValue rating) {
+        return raw(new BsonDocument("moveInfoId", new BsonString(moveInfoId))
+                .append("comment", new BsonString("A review"))
+                .append("rating", rating));
+    }
+
+    private static RawBsonDocument raw(BsonDocument document) {
+        return new RawBsonDocument(document, new BsonDocumentCodec());
+    }
+
+    // a document cut inside its rating, with its length and terminator fixed up so the snapshot still reads it
+    private static RawBsonDocument truncated(RawBsonDocument document) {
+        ByteBuffer source = document.getByteBuffer().asNIO();
+        byte[] bytes = new byte[source.remaining() - 12];
+        source.get(bytes, 0, bytes.length - 1);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(0, bytes.length);
+        return new RawBsonDocument(bytes);
+    }
+}
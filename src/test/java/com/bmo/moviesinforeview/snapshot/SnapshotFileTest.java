@@ -0,0 +1,93 @@
+package com.bmo.moviesinforeview.snapshot;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void documents_read_back_as_written() throws IOException {
+        List<RawBsonDocument> documents = IntStream.range(0, 1000).mapToObj(SnapshotFileTest::review).toList();
+        Path file = directory.resolve("reviews.bson.gz");
+
+        long bsonBytes = 0;
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            for (RawBsonDocument document : documents) {
+                bsonBytes += writer.write(document);
+            }
+            writer.finish();
+        }
+
+        List<RawBsonDocument> readDocuments = new ArrayList<>();
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            for (RawBsonDocument document = reader.next(); document != null; document = reader.next()) {
+                readDocuments.add(document);
+            }
+            assertEquals(bsonBytes, reader.bytesRead());
+        }
+        assertEquals(documents, readDocuments);
+        assertFalse(Files.exists(directory.resolve("reviews.bson.gz.part")));
+    }
+
+    @Test
+    void unfinished_export_leaves_no_snapshot() throws IOException {
+        Path file = directory.resolve("reviews.bson.gz");
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.write(review(1));
+        }
+
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(directory.resolve("reviews.bson.gz.part")));
+    }
+
+    @Test
+    void truncated_snapshot_is_an_error() throws IOException {
+        Path file = directory.resolve("reviews.bson.gz");
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.write(review(1));
+            writer.finish();
+        }
+        Path truncated = directory.resolve("truncated.bson.gz");
+        try (GZIPOutputStream output = new GZIPOutputStream(Files.newOutputStream(truncated))) {
+            ByteBuffer bytes = review(1).getByteBuffer().asNIO();
+            output.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining() - 3);
+        }
+
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            reader.next();
+            assertNull(reader.next());
+        }
+        try (SnapshotReader reader = new SnapshotReader(truncated)) {
+            assertThrows(EOFException.class, reader::next);
+        }
+    }
+
+    private static RawBsonDocument review(int i) {
+        return new RawBsonDocument(new BsonDocument("moveInfoId", new BsonString("1SW"))
+                .append("comment", new BsonString("Review number " + i))
+                .append("rating", new BsonDouble(i % 11)), new BsonDocumentCodec());
+    }
+}
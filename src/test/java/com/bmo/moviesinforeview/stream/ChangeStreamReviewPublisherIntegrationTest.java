@@ -0,0 +1,109 @@
+package com.bmo.moviesinforeview.stream;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.repository.MovieReviewRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Needs a single node replica set, e.g. {@code mongod --replSet rs0} followed by {@code rs.initiate()}.
+ * Run it with {@code ./gradlew replicaSetTest}, {@code MONGODB_REPLICA_SET_URI} overrides the default URI.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "reviews.stream.source=change-stream",
+        "spring.data.mongodb.uri=${MONGODB_REPLICA_SET_URI:mongodb://localhost:27017/test?directConnection=true}"
+})
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient(timeout = "30s")
+@Tag("replica-set")
+class ChangeStreamReviewPublisherIntegrationTest {
+
+    private static final String STREAM_URL = "/v1/reviews/stream";
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private MovieReviewRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll().block();
+    }
+
+    @Test
+    void when_reviews_change_in_the_collection_then_stream_every_event() {
+        Flux<ServerSentEvent<MovieReview>> eventFlux = streamEvents(null, "4SW");
+
+        StepVerifier.create(eventFlux)
+                .then(() -> Schedulers.boundedElastic().schedule(() -> {
+                    MovieReview saved = repository.save(MovieReview.builder()
+                            .moveInfoId("4SW").comment("Great").rating(9.0).build()).block();
+                    saved.setRating(3.0);
+                    repository.save(saved).block();
+                }, 500, TimeUnit.MILLISECONDS))
+                .expectNextMatches(event -> "created".equals(event.event()) && event.data().getRating() == 9.0)
+                .expectNextMatches(event -> "updated".equals(event.event()) && event.data().getRating() == 3.0)
+                .thenCancel()
+                .verify(Duration.ofSeconds(20));
+    }
+
+    @Test
+    void when_client_reconnects_with_last_event_id_then_replay_missed_events_and_hand_over_to_shared_stream() {
+        MovieReview first = MovieReview.builder().moveInfoId("5SW").comment("First").rating(5.0).build();
+
+        ServerSentEvent<MovieReview> firstEvent = streamEvents(null, "5SW")
+                .doOnSubscribe(subscription -> Schedulers.boundedElastic().schedule(
+                        () -> repository.save(first).block(), 500, TimeUnit.MILLISECONDS))
+                .filter(event -> "created".equals(event.event()))
+                .blockFirst(Duration.ofSeconds(20));
+
+        repository.save(MovieReview.builder().moveInfoId("5SW").comment("Missed").rating(6.0).build()).block();
+
+        // the replay stops at the position of the shared stream, which then delivers the next event once
+        StepVerifier.create(streamEvents(firstEvent.id(), "5SW"))
+                .expectNextMatches(event -> "Missed".equals(event.data().getComment()))
+                .then(() -> Schedulers.boundedElastic().schedule(() -> repository.save(MovieReview.builder()
+                        .moveInfoId("5SW").comment("Live").rating(7.0).build()).block(), 2, TimeUnit.SECONDS))
+                .expectNextMatches(event -> "Live".equals(event.data().getComment()))
+                .expectNoEvent(Duration.ofSeconds(1))
+                .thenCancel()
+                .verify(Duration.ofSeconds(20));
+
+        assertEquals("First", firstEvent.data().getComment());
+    }
+
+    private Flux<ServerSentEvent<MovieReview>> streamEvents(String lastEventId, String moveInfoId) {
+        return webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path(STREAM_URL).queryParam("moveInfoId", moveInfoId).build())
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .headers(headers -> {
+                    if (lastEventId != null) {
+                        headers.set("Last-Event-ID", lastEventId);
+                    }
+                })
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<MovieReview>>() {})
+                .getResponseBody()
+                .filter(event -> event.data() != null);
+    }
+}
@@ -0,0 +1,64 @@
+package com.bmo.moviesinforeview.stream;
+
+import com.bmo.moviesinforeview.cache.ReviewsByMovieCache;
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.ReviewEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChangeStreamReviewPublisherTest {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    private final ChangeStreamReviewPublisher publisher = new ChangeStreamReviewPublisher(reactiveMongoTemplate,
+            new ReviewBroadcaster(16, ReviewBroadcaster.OverflowPolicy.DROP_OLDEST, Duration.ofSeconds(15),
+                    ReviewBroadcaster.Source.CHANGE_STREAM),
+            new ReviewsByMovieCache(100, Duration.ofSeconds(30), new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class)),
+            Duration.ofSeconds(5), 1, Duration.ofSeconds(1));
+
+    private static ReviewEvent reviewEvent(String id) {
+        return ReviewEvent.builder()
+                .id(id)
+                .type(ReviewEvent.Type.CREATED)
+                .review(MovieReview.builder().id(id).moveInfoId("1SW").rating(5.0).build())
+                .build();
+    }
+
+    @Test
+    void event_ids_are_upper_case_hex_resume_tokens() {
+        assertTrue(ChangeStreamReviewPublisher.isEventId("8263A1B2C3000000012B022C0100296E5A1004"));
+        assertFalse(ChangeStreamReviewPublisher.isEventId("z"));
+        assertFalse(ChangeStreamReviewPublisher.isEventId("8263a1b2c3"));
+        assertFalse(ChangeStreamReviewPublisher.isEventId("826"));
+        assertFalse(ChangeStreamReviewPublisher.isEventId(""));
+    }
+
+    @Test
+    void when_replay_fails_then_deliver_the_shared_events_unfiltered() {
+        when(reactiveMongoTemplate.getCollectionName(MovieReview.class)).thenReturn("movieReview");
+        when(reactiveMongoTemplate.changeStream(isNull(), anyString(), isA(ChangeStreamOptions.class), eq(MovieReview.class)))
+                .thenReturn(Flux.error(new IllegalArgumentException("invalid resume token")));
+
+        // a well formed token sorting after every event, such as one of another deployment
+        StepVerifier.create(publisher.resumeAfter("FFFF", Flux.just(reviewEvent("8201"), reviewEvent("8202"))))
+                .expectNextMatches(reviewEvent -> reviewEvent.getId().equals("8201"))
+                .expectNextMatches(reviewEvent -> reviewEvent.getId().equals("8202"))
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,211 @@
+package com.bmo.moviesinforeview.stream;
+
+import com.bmo.moviesinforeview.domain.MovieReview;
+import com.bmo.moviesinforeview.domain.ReviewEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReviewBroadcasterTest {
+
+    private static ReviewEvent reviewEvent(String id, String moveInfoId) {
+        return ReviewEvent.of(ReviewEvent.Type.CREATED, MovieReview.builder()
+                .id(id)
+                .moveInfoId(moveInfoId)
+                .comment("Nice movie")
+                .rating(5.0)
+                .build());
+    }
+
+    private static ReviewBroadcaster broadcaster(ReviewBroadcaster.OverflowPolicy overflowPolicy) {
+        // subscribers are drained on the publishing thread, so what they received is known when publish() returns
+        return new ReviewBroadcaster(2, overflowPolicy, Duration.ofSeconds(15), ReviewBroadcaster.Source.LOCAL,
+                Schedulers.immediate());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void when_subscriber_filters_by_movie_then_receive_only_its_reviews() {
+        ReviewBroadcaster broadcaster = broadcaster(ReviewBroadcaster.OverflowPolicy.DROP_OLDEST);
+
+        StepVerifier.create(broadcaster.subscribe("1SW"))
+                .then(() -> {
+                    broadcaster.publish(reviewEvent("1", "1SW"));
+                    broadcaster.publish(reviewEvent("2", "2SW"));
+                    broadcaster.publish(reviewEvent("3", "1SW"));
+                })
+                .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("1"))
+                .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("3"))
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, broadcaster.getSubscriberCount());
+    }
+
+    @Test
+    void when_slow_subscriber_overflows_then_drop_oldest_reviews() {
+        ReviewBroadcaster broadcaster = broadcaster(ReviewBroadcaster.OverflowPolicy.DROP_OLDEST);
+
+        StepVerifier.create(broadcaster.subscribe(null), 0)
+                .then(() -> {
+                    for (int i = 1; i <= 5; i++) {
+                        broadcaster.publish(reviewEvent(String.valueOf(i), "1SW"));
+                    }
+                })
+                .thenRequest(2)
+                .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("4"))
+                .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("5"))
+                .thenCancel()
+                .verify();
+
+        assertEquals(3, broadcaster.getDroppedCount());
+        assertEquals(0, broadcaster.getFailedEmitCount());
+    }
+
+    @Test
+    void when_slow_subscriber_overflows_then_disconnect_it() {
+        ReviewBroadcaster broadcaster = broadcaster(ReviewBroadcaster.OverflowPolicy.DISCONNECT);
+
+        StepVerifier.create(broadcaster.subscribe(null), 0)
+                .then(() -> {
+                    for (int i = 1; i <= 3; i++) {
+                        broadcaster.publish(reviewEvent(String.valueOf(i), "1SW"));
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(reviewEvent -> true)
+                .verifyComplete();
+
+        assertEquals(1, broadcaster.getDisconnectedCount());
+    }
+
+    @Test
+    void when_worker_falls_behind_then_drop_oldest_reviews_and_count_them() {
+        Scheduler scheduler = Schedulers.newSingle("stalled-subscriber");
+        CountDownLatch stalled = new CountDownLatch(1);
+        ReviewBroadcaster broadcaster = new ReviewBroadcaster(2, ReviewBroadcaster.OverflowPolicy.DROP_OLDEST,
+                Duration.ofSeconds(15), ReviewBroadcaster.Source.LOCAL, scheduler);
+        try {
+            StepVerifier.create(broadcaster.subscribe(null))
+                    .then(() -> {
+                        // the worker cannot take any event until every one is published
+                        scheduler.schedule(() -> awaitUninterruptibly(stalled));
+                        for (int i = 1; i <= 10; i++) {
+                            broadcaster.publish(reviewEvent(String.valueOf(i), "1SW"));
+                        }
+                        stalled.countDown();
+                    })
+                    // the two handed to the worker, and the two newest left in the buffer
+                    .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("1"))
+                    .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("2"))
+                    .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("9"))
+                    .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("10"))
+                    .thenCancel()
+                    .verify(Duration.ofSeconds(5));
+        } finally {
+            scheduler.dispose();
+        }
+
+        assertEquals(6, broadcaster.getDroppedCount());
+        assertEquals(0, broadcaster.getFailedEmitCount());
+    }
+
+    @Test
+    void when_worker_falls_behind_then_disconnect_it() {
+        Scheduler scheduler = Schedulers.newSingle("stalled-subscriber");
+        CountDownLatch stalled = new CountDownLatch(1);
+        ReviewBroadcaster broadcaster = new ReviewBroadcaster(2, ReviewBroadcaster.OverflowPolicy.DISCONNECT,
+                Duration.ofSeconds(15), ReviewBroadcaster.Source.LOCAL, scheduler);
+        try {
+            StepVerifier.create(broadcaster.subscribe(null))
+                    .then(() -> {
+                        scheduler.schedule(() -> awaitUninterruptibly(stalled));
+                        for (int i = 1; i <= 10; i++) {
+                            broadcaster.publish(reviewEvent(String.valueOf(i), "1SW"));
+                        }
+                        stalled.countDown();
+                    })
+                    .thenConsumeWhile(reviewEvent -> true)
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(5));
+        } finally {
+            scheduler.dispose();
+        }
+
+        assertEquals(1, broadcaster.getDisconnectedCount());
+    }
+
+    @Test
+    void when_published_then_subscribers_receive_it_off_the_publishing_thread() {
+        ReviewBroadcaster broadcaster = new ReviewBroadcaster(2, ReviewBroadcaster.OverflowPolicy.DROP_OLDEST,
+                Duration.ofSeconds(15), ReviewBroadcaster.Source.LOCAL);
+        Thread publishingThread = Thread.currentThread();
+
+        StepVerifier.create(broadcaster.subscribe(null).map(reviewEvent -> Thread.currentThread()))
+                .then(() -> broadcaster.publish(reviewEvent("1", "1SW")))
+                .expectNextMatches(thread -> thread != publishingThread)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void when_source_is_change_stream_then_ignore_local_writes() {
+        ReviewBroadcaster broadcaster = new ReviewBroadcaster(2, ReviewBroadcaster.OverflowPolicy.DROP_OLDEST,
+                Duration.ofSeconds(15), ReviewBroadcaster.Source.CHANGE_STREAM, Schedulers.immediate());
+
+        StepVerifier.create(broadcaster.subscribe(null))
+                .then(() -> {
+                    broadcaster.publishLocal(reviewEvent("1", "1SW"));
+                    broadcaster.publish(reviewEvent("2", "1SW"));
+                })
+                .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("2"))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void when_new_subscriber_then_start_with_latest_review() {
+        ReviewBroadcaster broadcaster = broadcaster(ReviewBroadcaster.OverflowPolicy.DROP_OLDEST);
+        broadcaster.publish(reviewEvent("1", "1SW"));
+        broadcaster.publish(reviewEvent("2", "1SW"));
+
+        StepVerifier.create(broadcaster.subscribe(null))
+                .expectNextMatches(reviewEvent -> reviewEvent.getReview().getId().equals("2"))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void when_bound_to_registry_then_publish_stream_meters() {
+        ReviewBroadcaster broadcaster = broadcaster(ReviewBroadcaster.OverflowPolicy.DROP_OLDEST);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        broadcaster.bindTo(registry);
+
+        StepVerifier.create(broadcaster.subscribe(null))
+                .then(() -> {
+                    assertEquals(1, registry.get("reviews.stream.subscribers").gauge().value());
+                    broadcaster.publish(reviewEvent("1", "1SW"));
+                })
+                .expectNextCount(1)
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, registry.get("reviews.stream.subscribers").gauge().value());
+        assertEquals(1, registry.get("reviews.stream.published").functionCounter().count());
+        assertEquals(0, registry.get("reviews.stream.dropped").functionCounter().count());
+    }
+}